@@ -0,0 +1,120 @@
+package com.serega.animatedview;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.test.InstrumentationTestCase;
+import android.view.View;
+
+import com.serega.animatedview.core.FlipAnimation;
+import com.serega.animatedview.core.GridLayout;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the flip by a manual {@link FrameClock}: the clock set on a controller is the one its draw thread samples,
+ * and frames stepped at exact times give the same squares on every run
+ */
+public class FrameClockTest extends InstrumentationTestCase {
+	private static final int WIDTH = 100;
+	private static final int SQUARES_HORIZONTAL = 2;
+	private static final long TIMEOUT_SECONDS = 5;
+
+	private ManualClock clock;
+	private SquareGrid grid;
+	private long flipDuration;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		clock = new ManualClock();
+		GridLayout layout = new GridLayout(WIDTH, SQUARES_HORIZONTAL, 0);
+		grid = new SquareGrid(layout.getCount(), layout.getSquareSize());
+		grid.setLayout(layout);
+		grid.setStep(FlipAnimation.DEFAULT_STEP);
+		grid.setMaxDelay(0);
+		FlipAnimation reference = new FlipAnimation(1);
+		reference.setStep(FlipAnimation.DEFAULT_STEP);
+		flipDuration = reference.getFlipDuration();
+	}
+
+	public void testDrawThreadSamplesClockOfController() throws Exception {
+		final Context context = getInstrumentation().getTargetContext();
+		final FlipController[] controller = new FlipController[1];
+		//Render thread is started on the main thread, vsync is delivered there
+		getInstrumentation().runOnMainSync(new Runnable() {
+			@Override
+			public void run() {
+				controller[0] = new FlipController(new View(context));
+				controller[0].setFrameClock(clock);
+				controller[0].onTargetCreated(new BitmapTarget(WIDTH, WIDTH));
+			}
+		});
+		try {
+			assertTrue(clock.awaitSampled(TIMEOUT_SECONDS));
+		} finally {
+			getInstrumentation().runOnMainSync(new Runnable() {
+				@Override
+				public void run() {
+					controller[0].onTargetDestroyed();
+					controller[0].release();
+				}
+			});
+		}
+	}
+
+	public void testIdleFrameChangesNothing() {
+		Rect dirty = new Rect();
+		assertFalse(grid.prepareFrame(clock.now(), dirty));
+		assertTrue(dirty.isEmpty());
+	}
+
+	public void testFlipTakesFlipDuration() {
+		Rect dirty = new Rect();
+		grid.flip(clock.now());
+		assertTrue(grid.prepareFrame(clock.now(), dirty));
+		assertFalse(dirty.isEmpty());
+
+		clock.advance(flipDuration - 1);
+		assertTrue(grid.prepareFrame(clock.now(), dirty));
+		assertTrue(grid.isAnimating());
+		assertEquals(SquareGrid.State.FRONT, grid.getCurrentState());
+
+		clock.advance(1);
+		assertTrue(grid.prepareFrame(clock.now(), dirty));
+		assertFalse(grid.isAnimating());
+		assertEquals(SquareGrid.State.BACK, grid.getCurrentState());
+	}
+
+	public void testDroppedFramesAreSkipped() {
+		Rect dirty = new Rect();
+		grid.flip(clock.now());
+		//One frame after the flip is over, squares rest on the other face right away
+		clock.advance(flipDuration * 3);
+		grid.prepareFrame(clock.now(), dirty);
+		assertFalse(grid.isAnimating());
+		assertEquals(SquareGrid.State.BACK, grid.getCurrentState());
+	}
+
+	private static class ManualClock implements FrameClock {
+		private final CountDownLatch sampled = new CountDownLatch(1);
+		private volatile long now;
+
+		@Override
+		public long now() {
+			sampled.countDown();
+			return now;
+		}
+
+		private void advance(long millis) {
+			now += millis;
+		}
+
+		/**
+		 * @return true if the clock was read before the timeout
+		 */
+		private boolean awaitSampled(long seconds) throws InterruptedException {
+			return sampled.await(seconds, TimeUnit.SECONDS);
+		}
+	}
+}
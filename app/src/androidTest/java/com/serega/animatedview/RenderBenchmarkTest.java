@@ -0,0 +1,187 @@
+package com.serega.animatedview;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Debug;
+import android.util.Log;
+
+import com.serega.animatedview.core.GridLayout;
+
+import junit.framework.TestCase;
+
+/**
+ * Headless render throughput benchmark. Full flips of grids are drawn into an offscreen
+ * {@link BitmapTarget} as fast as possible, animation time is stepped by a fixed frame interval,
+ * so every configuration draws the same frames whatever the device speed is.
+ * <p>
+ * Grids are built here instead of being prepared, so the run leaves {@link Cache}, {@link BitmapPool}
+ * and {@link PrepareStats} of the process untouched. Results are written to logcat with tag {@value #TAG}.
+ */
+public class RenderBenchmarkTest extends TestCase {
+	private static final String TAG = "RenderBenchmark";
+
+	/**
+	 * Animation time step, one frame at 60 fps
+	 */
+	private static final long FRAME_MILLIS = 16;
+
+	private static final int WIDTH = 720;
+	private static final int[] SQUARES_COUNTS = {4, 8, 16, 32};
+	private static final int[] MARGINS = {0, 4};
+	private static final int[] FLIP_SPEEDS = {2, 6, 18};
+	private static final int[] RENDER_MODES = {SquareGrid.RENDER_MODE_SQUARES, SquareGrid.RENDER_MODE_MESH};
+	private static final boolean[] BITMAPS = {false, true};
+	private static final int FLIPS = 4;
+
+	/**
+	 * Animation time of the run, advanced by {@link #FRAME_MILLIS} every frame
+	 */
+	private long frameTime;
+
+	/**
+	 * Measure every combination of the settings
+	 */
+	public void testRenderThroughput() {
+		//Owned by the benchmark, never cached or pooled, so they can be recycled at the end
+		Bitmap front = Bitmap.createBitmap(WIDTH, WIDTH, Bitmap.Config.ARGB_8888);
+		front.eraseColor(Color.BLUE);
+		Bitmap back = Bitmap.createBitmap(WIDTH, WIDTH, Bitmap.Config.ARGB_8888);
+		back.eraseColor(Color.YELLOW);
+		BitmapTarget target = new BitmapTarget(WIDTH, WIDTH);
+
+		try {
+			for (int squares : SQUARES_COUNTS) {
+				for (int margin : MARGINS) {
+					for (int speed : FLIP_SPEEDS) {
+						for (int mode : RENDER_MODES) {
+							for (boolean withBitmaps : BITMAPS) {
+								SquareGrid grid = createGrid(squares, margin, speed, mode,
+										withBitmaps ? front : null, withBitmaps ? back : null);
+								Result result = measure(grid, target, squares, margin, speed, mode, withBitmaps);
+								Log.i(TAG, result.toString());
+								assertTrue(result.frames > 0);
+							}
+						}
+					}
+				}
+			}
+		} finally {
+			front.recycle();
+			back.recycle();
+		}
+	}
+
+	private static SquareGrid createGrid(int squares, int margin, int speed, int mode, Bitmap front, Bitmap back) {
+		GridLayout layout = new GridLayout(WIDTH, squares, margin);
+		SquareGrid grid = new SquareGrid(layout.getCount(), layout.getSquareSize());
+		if (front != null) {
+			grid.setFrontBitmap(front);
+			grid.setBackBitmap(back);
+		} else {
+			grid.setFrontColor(Color.RED);
+			grid.setBackColor(Color.GREEN);
+		}
+		grid.setLayout(layout);
+		grid.setStep(speed);
+		grid.setRenderMode(mode);
+		return grid;
+	}
+
+	private Result measure(SquareGrid grid, BitmapTarget target, int squares, int margin, int speed, int mode,
+	                       boolean withBitmaps) {
+		SceneRenderer renderer = new SceneRenderer(Constants.DEFAULT_BACKGROUND_COLOR);
+		renderer.setGrid(grid);
+
+		//Warm up: one unmeasured flip, so the first frame full redraw and lazy allocations are not counted
+		flipOnce(renderer, grid, target);
+
+		int frames = 0;
+		Debug.resetThreadAllocCount();
+		Debug.resetThreadAllocSize();
+		Debug.startAllocCounting();
+		long start = System.nanoTime();
+		for (int i = 0; i < FLIPS; i++) {
+			frames += flipOnce(renderer, grid, target);
+		}
+		long nanos = System.nanoTime() - start;
+		Debug.stopAllocCounting();
+		int allocations = Debug.getThreadAllocCount();
+		int allocatedBytes = Debug.getThreadAllocSize();
+
+		renderer.release();
+		return new Result(squares, margin, speed, mode, withBitmaps, frames, nanos, allocations, allocatedBytes);
+	}
+
+	/**
+	 * Flip all squares and render frames until they come to rest
+	 *
+	 * @return count of rendered frames
+	 */
+	private int flipOnce(SceneRenderer renderer, SquareGrid grid, BitmapTarget target) {
+		grid.flip(frameTime);
+		int frames = 0;
+		boolean animating = true;
+		while (animating) {
+			animating = renderer.renderFrame(target, frameTime);
+			frameTime += FRAME_MILLIS;
+			frames++;
+		}
+		return frames;
+	}
+
+	/**
+	 * Throughput of one configuration
+	 */
+	private static final class Result {
+		private final int squaresHorizontal;
+		private final int margin;
+		private final int flipSpeed;
+		private final int renderMode;
+		private final boolean withBitmaps;
+		private final int frames;
+		private final long nanos;
+		private final int allocations;
+		private final int allocatedBytes;
+
+		private Result(int squaresHorizontal, int margin, int flipSpeed, int renderMode, boolean withBitmaps,
+		               int frames, long nanos, int allocations, int allocatedBytes) {
+			this.squaresHorizontal = squaresHorizontal;
+			this.margin = margin;
+			this.flipSpeed = flipSpeed;
+			this.renderMode = renderMode;
+			this.withBitmaps = withBitmaps;
+			this.frames = frames;
+			this.nanos = nanos;
+			this.allocations = allocations;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		private float getFramesPerSecond() {
+			return nanos > 0 ? frames * 1000000000f / nanos : 0;
+		}
+
+		private float getMillisPerFrame() {
+			return frames > 0 ? nanos / 1000000f / frames : 0;
+		}
+
+		/**
+		 * @return objects allocated by the render thread per frame
+		 */
+		private float getAllocationsPerFrame() {
+			return frames > 0 ? allocations / (float) frames : 0;
+		}
+
+		private float getAllocatedBytesPerFrame() {
+			return frames > 0 ? allocatedBytes / (float) frames : 0;
+		}
+
+		@Override
+		public String toString() {
+			return "squares=" + squaresHorizontal + " margin=" + margin + " speed=" + flipSpeed
+					+ " mode=" + (renderMode == SquareGrid.RENDER_MODE_MESH ? "mesh" : "squares")
+					+ " bitmaps=" + withBitmaps + " frames=" + frames + " fps=" + getFramesPerSecond()
+					+ " ms/frame=" + getMillisPerFrame() + " allocs/frame=" + getAllocationsPerFrame()
+					+ " bytes/frame=" + getAllocatedBytesPerFrame();
+		}
+	}
+}
@@ -1,22 +1,30 @@
 package com.serega.animatedview;
 
 import android.annotation.TargetApi;
+import android.animation.TimeInterpolator;
 import android.content.Context;
+import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.os.Handler;
 import android.os.Looper;
+import android.support.annotation.Nullable;
 import android.util.AttributeSet;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.FrameLayout;
 import android.widget.ProgressBar;
 
-public class AnimatedContainer extends FrameLayout implements AnimatedView.PrepareProgressCallback {
+import com.serega.animatedview.core.InterpolatorTable;
+
+public class AnimatedContainer extends FrameLayout implements FlipController.PrepareProgressCallback {
+	private static final int RENDER_BACKEND_SURFACE = 0;
+	private static final int RENDER_BACKEND_TEXTURE = 1;
 	private FrameLayout progress;
 	private ProgressBar smallProgress;
 	private Handler handler;
-	private AnimatedView animatedView;
+	private FlipController controller;
 	public static final int DEFAULT_SIZE_DP = 150;
 	private boolean firstStart = true;
 
@@ -58,19 +66,119 @@ public class AnimatedContainer extends FrameLayout implements AnimatedView.Prepa
 		setMeasuredDimension(size, size);
 	}
 
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		controller.onAttached();
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		controller.onDetached();
+	}
+
 	private void init(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
 		handler = new Handler(Looper.getMainLooper());
 		View view = LayoutInflater.from(context).inflate(R.layout.animated_view_layout, this, true);
 		progress = (FrameLayout) view.findViewById(R.id.progress_bar);
 		smallProgress = (ProgressBar) view.findViewById(R.id.progress_small);
-		animatedView = (AnimatedView) view.findViewById(R.id.animatedView);
-		animatedView.setPrepareCallback(this);
-		animatedView.init(context, attrs, defStyleAttr, defStyleRes);
+		AnimatedView animatedView = (AnimatedView) view.findViewById(R.id.animatedView);
+		int renderBackend = RENDER_BACKEND_SURFACE;
+		if (attrs != null) {
+			TypedArray a = context.getTheme().obtainStyledAttributes(attrs, R.styleable.AnimatedContainer, defStyleAttr, defStyleRes);
+			renderBackend = a.getInt(R.styleable.AnimatedContainer_renderBackend, RENDER_BACKEND_SURFACE);
+			a.recycle();
+		}
+
+		if (renderBackend == RENDER_BACKEND_TEXTURE) {
+			//Texture view takes the place of the surface view under progress bars
+			ViewGroup mainContainer = (ViewGroup) view.findViewById(R.id.main_container);
+			mainContainer.removeView(animatedView);
+			AnimatedTextureView textureView = new AnimatedTextureView(context);
+			mainContainer.addView(textureView, 0);
+			controller = new FlipController(textureView);
+			textureView.setController(controller);
+		} else {
+			controller = new FlipController(animatedView);
+			animatedView.setController(controller);
+		}
+		controller.setPrepareCallback(this);
+		controller.init(context, attrs, defStyleAttr, defStyleRes);
 	}
 
 	public void flip() {
-		if (animatedView != null) {
-			animatedView.flip();
+		if (controller != null) {
+			controller.flip();
+		}
+	}
+
+	/**
+	 * Render on one thread shared by all containers which opt in, instead of an own render thread.
+	 * Useful when many containers are shown at once. Can be set by sharedRenderThread attribute,
+	 * takes effect when the view surface is created next time.
+	 *
+	 * @param shared true - use the shared render thread
+	 */
+	public void setSharedRenderThread(boolean shared) {
+		controller.setSharedRenderThread(shared);
+	}
+
+	/**
+	 * Set easing of the flip. Interpolator is sampled once, the next prepared image flips with it.
+	 *
+	 * @param interpolator flip easing, linear by default
+	 */
+	public void setFlipInterpolator(final TimeInterpolator interpolator) {
+		controller.setInterpolator(InterpolatorTable.of(new InterpolatorTable.Curve() {
+			@Override
+			public float get(float input) {
+				return interpolator.getInterpolation(input);
+			}
+		}));
+	}
+
+	/**
+	 * Replace the clock the flip is stepped by, e.g. with a manual clock in tests or screenshots.
+	 * Frames drawn after the change use the new clock.
+	 *
+	 * @param clock monotonic clock, {@link FrameClock#SYSTEM} by default
+	 */
+	public void setFrameClock(FrameClock clock) {
+		controller.setFrameClock(clock);
+	}
+
+	/**
+	 * Start or stop recording frame timing, disabled by default. Can be enabled by metricsEnabled attribute.
+	 * While enabled, frame phases are also marked as trace sections in systrace.
+	 *
+	 * @param enabled true - record timing of every drawn frame
+	 */
+	public void setMetricsEnabled(boolean enabled) {
+		controller.setMetricsEnabled(enabled);
+	}
+
+	/**
+	 * @return frame timing or null if metrics were never enabled
+	 */
+	@Nullable
+	public FrameMetrics getFrameMetrics() {
+		return controller.getMetrics();
+	}
+
+	/**
+	 * Listen for frame timing reports, a report is sent every time all squares finish flipping.
+	 * Setting a listener enables metrics.
+	 *
+	 * @param listener listener or null to stop listening
+	 */
+	public void setFrameMetricsListener(@Nullable FrameMetrics.Listener listener) {
+		if (listener != null) {
+			controller.setMetricsEnabled(true);
+		}
+		FrameMetrics metrics = controller.getMetrics();
+		if (metrics != null) {
+			metrics.setListener(listener);
 		}
 	}
 
@@ -118,15 +226,53 @@ public class AnimatedContainer extends FrameLayout implements AnimatedView.Prepa
 	}
 
 	public void nextBitmap(int bitmapId){
-		animatedView.nextBitmap(bitmapId);
+		controller.nextBitmap(bitmapId);
 	}
 
 	public void nextBitmap(Bitmap bitmap){
-		animatedView.nextBitmap(bitmap);
+		controller.nextBitmap(bitmap);
 	}
 
 	public void clear(){
-		animatedView.clear();
+		controller.clear();
+	}
+
+	/**
+	 * Free squares and prefetched images right away, e.g. when the container is not going to be shown again.
+	 * Squares of a detached container are kept until memory runs low, so it is shown right away when attached again.
+	 * If the container is shown after release, squares are prepared again.
+	 */
+	public void release() {
+		controller.release();
+	}
+
+	/**
+	 * Set images which will be shown next. They are decoded and scaled in background,
+	 * so {@link #nextBitmap(int)} with a prefetched image flips on the next frame without waiting for a prepare.
+	 * Images not in the new list are dropped.
+	 *
+	 * @param bitmapIds image resource ids in the order they will be shown
+	 */
+	public void setUpcoming(int... bitmapIds) {
+		controller.setUpcoming(bitmapIds);
+	}
+
+	/**
+	 * Add image to the end of the upcoming list, see {@link #setUpcoming(int...)}
+	 *
+	 * @param bitmapId image resource id
+	 */
+	public void enqueue(int bitmapId) {
+		controller.enqueue(bitmapId);
+	}
+
+	/**
+	 * Set how much memory prefetched images may take
+	 *
+	 * @param bytes budget in bytes, 0 - half of the {@link Cache} size
+	 */
+	public void setPrefetchBudget(int bytes) {
+		controller.setPrefetchBudget(bytes);
 	}
 
 }
@@ -0,0 +1,72 @@
+package com.serega.animatedview;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.util.AttributeSet;
+import android.view.TextureView;
+
+/**
+ * TextureView backend, squares are drawn to a texture composed with the rest of the view hierarchy
+ */
+class AnimatedTextureView extends TextureView implements TextureView.SurfaceTextureListener {
+	private FlipController controller;
+
+	public AnimatedTextureView(Context context) {
+		super(context);
+	}
+
+	public AnimatedTextureView(Context context, AttributeSet attrs) {
+		super(context, attrs);
+	}
+
+	public AnimatedTextureView(Context context, AttributeSet attrs, int defStyleAttr) {
+		super(context, attrs, defStyleAttr);
+	}
+
+	@TargetApi(21)
+	public AnimatedTextureView(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
+		super(context, attrs, defStyleAttr, defStyleRes);
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+		int size = FlipController.measureSize(this, widthMeasureSpec);
+		setMeasuredDimension(size, size);
+	}
+
+	void setController(FlipController controller) {
+		this.controller = controller;
+		setSurfaceTextureListener(this);
+	}
+
+	@Override
+	protected void onWindowVisibilityChanged(int visibility) {
+		super.onWindowVisibilityChanged(visibility);
+		if (controller != null) {
+			controller.onWindowVisibilityChanged(visibility);
+		}
+	}
+
+	@Override
+	public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+		controller.onTargetCreated(new TextureViewTarget(this));
+	}
+
+	@Override
+	public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
+		controller.onTargetChanged(width);
+	}
+
+	@Override
+	public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+		controller.onTargetDestroyed();
+		return true;
+	}
+
+	@Override
+	public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+
+	}
+}
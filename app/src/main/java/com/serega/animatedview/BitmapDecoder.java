@@ -0,0 +1,409 @@
+package com.serega.animatedview;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes images right at the size they will be drawn.
+ * Bounds are read first, the image is decoded with power of two inSampleSize,
+ * images cropped to the target aspect ratio decode only the shown region,
+ * exact scale is applied only if the sampled bitmap still differs from the target size.
+ * Decoded and scaled bitmaps are taken from {@link BitmapPool} when possible.
+ */
+public final class BitmapDecoder {
+	/**
+	 * Bytes not allocated thanks to inSampleSize, compared to decoding images in full size
+	 */
+	private static final AtomicLong bytesSaved = new AtomicLong();
+
+	/**
+	 * Source is stretched to the target size
+	 */
+	public static final int SCALE_MODE_FIT_XY = 0;
+
+	/**
+	 * Source keeps its aspect ratio and covers the target, the rest is cropped.
+	 * Only the shown part of the image is decoded.
+	 */
+	public static final int SCALE_MODE_CENTER_CROP = 1;
+
+	/**
+	 * Source keeps its aspect ratio and fits into the target, the rest is transparent
+	 */
+	public static final int SCALE_MODE_FIT_CENTER = 2;
+
+	private BitmapDecoder() {
+
+	}
+
+	/**
+	 * Decode resource scaled to the target size
+	 *
+	 * @param resources resources
+	 * @param id        image resource id
+	 * @param width     target width
+	 * @param height    target height
+	 * @param config    target config
+	 * @param scaleMode how the image is fitted to the target, see SCALE_MODE_* constants
+	 * @param trace     prepare to record timing and allocations to or null
+	 * @return bitmap of the target size or null if the image can not be decoded
+	 */
+	@Nullable
+	static Bitmap decodeResource(Resources resources, int id, int width, int height, Bitmap.Config config,
+	                             int scaleMode, @Nullable PrepareTrace trace) {
+		long start = System.nanoTime();
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		//We scale to the view size ourselves, density scaling would only add one more pass
+		options.inScaled = false;
+		BitmapFactory.decodeResource(resources, id, options);
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			if (trace != null) {
+				trace.addDecode(System.nanoTime() - start);
+			}
+			return null;
+		}
+
+		long fullSizeBytes = (long) options.outWidth * options.outHeight * bytesPerPixel(config);
+		Rect region = sourceRegion(options.outWidth, options.outHeight, width, height, scaleMode);
+		Rect target = targetRegion(options.outWidth, options.outHeight, width, height, scaleMode);
+		options.inJustDecodeBounds = false;
+		options.inSampleSize = calculateInSampleSize(region.width(), region.height(), target.width(), target.height());
+		options.inPreferredConfig = config;
+		options.inMutable = true;
+		BitmapPool pool = BitmapPool.getInstance();
+
+		Bitmap decoded = null;
+		if (region.width() != options.outWidth || region.height() != options.outHeight) {
+			decoded = decodeRegion(resources, id, region, options);
+		}
+		if (decoded == null) {
+			//Cropped part of the whole image is dropped while scaling
+			options.inBitmap = pool.obtainForDecode(options.outWidth, options.outHeight, config, options.inSampleSize);
+			try {
+				decoded = BitmapFactory.decodeResource(resources, id, options);
+			} catch (IllegalArgumentException e) {
+				if (options.inBitmap == null) {
+					throw e;
+				}
+				//Pooled bitmap can't be reused for this image, decode into a new one
+				pool.put(options.inBitmap);
+				options.inBitmap = null;
+				decoded = BitmapFactory.decodeResource(resources, id, options);
+			}
+		}
+		if (trace != null) {
+			trace.addDecode(System.nanoTime() - start);
+			if (decoded != null && decoded != options.inBitmap) {
+				trace.onAllocated(decoded.getByteCount());
+			}
+		}
+		if (decoded == null) {
+			if (options.inBitmap != null) {
+				pool.put(options.inBitmap);
+			}
+			return null;
+		}
+		pool.adopt(decoded);
+		bytesSaved.addAndGet(fullSizeBytes - decoded.getByteCount());
+
+		//Decoder may pick another config than preferred, e.g. for grayscale images
+		if (decoded.getWidth() == width && decoded.getHeight() == height && decoded.getConfig() == config) {
+			return decoded;
+		}
+		Bitmap scaled = scale(decoded, width, height, config, scaleMode, trace);
+		pool.put(decoded);
+		return scaled;
+	}
+
+	/**
+	 * Decode only the part of the resource shown in the target
+	 *
+	 * @return decoded region or null if the image format is not supported by BitmapRegionDecoder
+	 */
+	@Nullable
+	private static Bitmap decodeRegion(Resources resources, int id, Rect region, BitmapFactory.Options options) {
+		BitmapRegionDecoder decoder = newRegionDecoder(resources, id);
+		if (decoder == null) {
+			return null;
+		}
+		try {
+			//Region decoder clips its output to inBitmap instead of resizing it, so pooled bitmaps are not used here
+			return decoder.decodeRegion(region, options);
+		} finally {
+			decoder.recycle();
+		}
+	}
+
+	/**
+	 * Scale bitmap into a pooled bitmap of the target size, stretching it
+	 *
+	 * @param source bitmap to scale
+	 * @param width  target width
+	 * @param height target height
+	 * @param trace  prepare to record timing and allocations to or null
+	 * @return scaled bitmap, or the source itself if it already has the target size
+	 */
+	static Bitmap scale(Bitmap source, int width, int height, @Nullable PrepareTrace trace) {
+		Bitmap.Config config = source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+		return scale(source, width, height, config, SCALE_MODE_FIT_XY, trace);
+	}
+
+	/**
+	 * Scale bitmap into a pooled bitmap of the target size and config
+	 *
+	 * @param source    bitmap to scale
+	 * @param width     target width
+	 * @param height    target height
+	 * @param config    config of the scaled bitmap
+	 * @param scaleMode how the bitmap is fitted to the target, see SCALE_MODE_* constants
+	 * @param trace     prepare to record timing and allocations to or null
+	 * @return scaled bitmap, or the source itself if it already has the target size and config
+	 */
+	static Bitmap scale(Bitmap source, int width, int height, Bitmap.Config config, int scaleMode,
+	                    @Nullable PrepareTrace trace) {
+		if (source.getWidth() == width && source.getHeight() == height && source.getConfig() == config) {
+			return source;
+		}
+		long start = System.nanoTime();
+		Bitmap scaled = BitmapPool.getInstance().obtain(width, height, config, trace);
+		Rect src = sourceRegion(source.getWidth(), source.getHeight(), width, height, scaleMode);
+		Rect dst = targetRegion(source.getWidth(), source.getHeight(), width, height, scaleMode);
+		new Canvas(scaled).drawBitmap(source, src, dst, null);
+		if (trace != null) {
+			trace.addScale(System.nanoTime() - start);
+		}
+		return scaled;
+	}
+
+	/**
+	 * @return part of the source shown in the target, the whole source unless it is cropped
+	 */
+	static Rect sourceRegion(int sourceWidth, int sourceHeight, int width, int height, int scaleMode) {
+		if (scaleMode != SCALE_MODE_CENTER_CROP) {
+			return new Rect(0, 0, sourceWidth, sourceHeight);
+		}
+		if ((long) sourceWidth * height > (long) sourceHeight * width) {
+			int croppedWidth = (int) ((long) sourceHeight * width / height);
+			int left = (sourceWidth - croppedWidth) / 2;
+			return new Rect(left, 0, left + croppedWidth, sourceHeight);
+		}
+		int croppedHeight = (int) ((long) sourceWidth * height / width);
+		int top = (sourceHeight - croppedHeight) / 2;
+		return new Rect(0, top, sourceWidth, top + croppedHeight);
+	}
+
+	/**
+	 * @return part of the target the source is drawn to, the whole target unless the source is fitted inside
+	 */
+	static Rect targetRegion(int sourceWidth, int sourceHeight, int width, int height, int scaleMode) {
+		if (scaleMode != SCALE_MODE_FIT_CENTER) {
+			return new Rect(0, 0, width, height);
+		}
+		if ((long) sourceWidth * height > (long) sourceHeight * width) {
+			int fittedHeight = (int) ((long) sourceHeight * width / sourceWidth);
+			int top = (height - fittedHeight) / 2;
+			return new Rect(0, top, width, top + fittedHeight);
+		}
+		int fittedWidth = (int) ((long) sourceWidth * height / sourceHeight);
+		int left = (width - fittedWidth) / 2;
+		return new Rect(left, 0, left + fittedWidth, height);
+	}
+
+	/**
+	 * Receives tiles as soon as they are decoded
+	 */
+	interface TileListener {
+		/**
+		 * Called on the thread which decoded the tile, listener owns the tile
+		 *
+		 * @param index index of the tile in the requested tiles
+		 * @param tile  decoded tile, not referenced yet
+		 */
+		void onTileDecoded(int index, Bitmap tile);
+	}
+
+	/**
+	 * Decode square tiles of the resource scaled to the target size, each tile straight from its region of the source.
+	 * The whole image is never decoded, tiles are split between free {@link PrepareScheduler} workers and the calling thread.
+	 *
+	 * @param resources resources
+	 * @param id        image resource id
+	 * @param width     width of the scaled image
+	 * @param height    height of the scaled image
+	 * @param tileLeft  left of tiles in the scaled image
+	 * @param tileTop   top of tiles in the scaled image
+	 * @param tileSize  side of a tile
+	 * @param config    target config
+	 * @param scaleMode how the image is fitted to the target, see SCALE_MODE_* constants
+	 * @param listener  receives every tile as soon as it is decoded
+	 * @param trace     prepare to record timing and allocations to or null
+	 * @return false if the image can't be decoded by regions
+	 * @throws IOException if decoding of a tile failed
+	 */
+	static boolean decodeTiles(final Resources resources, final int id, int width, int height,
+	                           final int[] tileLeft, final int[] tileTop, final int tileSize, final Bitmap.Config config,
+	                           int scaleMode, final TileListener listener, @Nullable final PrepareTrace trace) throws IOException {
+		BitmapFactory.Options bounds = new BitmapFactory.Options();
+		bounds.inJustDecodeBounds = true;
+		bounds.inScaled = false;
+		BitmapFactory.decodeResource(resources, id, bounds);
+		if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+			return false;
+		}
+		final Rect region = sourceRegion(bounds.outWidth, bounds.outHeight, width, height, scaleMode);
+		final Rect target = targetRegion(bounds.outWidth, bounds.outHeight, width, height, scaleMode);
+		final int sampleSize = calculateInSampleSize(region.width(), region.height(), target.width(), target.height());
+
+		//Decoder locks itself for every region, so each thread needs its own one
+		BitmapRegionDecoder first = newRegionDecoder(resources, id);
+		if (first == null) {
+			return false;
+		}
+
+		final int count = tileLeft.length;
+		int chunks = Math.max(1, Math.min(count, Runtime.getRuntime().availableProcessors()));
+		List<Callable<Void>> tasks = new ArrayList<>(chunks);
+		for (int c = 0; c < chunks; c++) {
+			final int from = count * c / chunks;
+			final int to = count * (c + 1) / chunks;
+			final BitmapRegionDecoder own = c == 0 ? first : null;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					BitmapRegionDecoder decoder = own != null ? own : newRegionDecoder(resources, id);
+					if (decoder == null) {
+						throw new IOException("Can't decode regions of resource " + id);
+					}
+					try {
+						for (int i = from; i < to; i++) {
+							PrepareUtils.checkCancelled();
+							listener.onTileDecoded(i, decodeTile(decoder, region, target, sampleSize, tileLeft[i], tileTop[i], tileSize, config, trace));
+						}
+					} finally {
+						decoder.recycle();
+					}
+					return null;
+				}
+			});
+		}
+
+		//Tiles already belong to a prepare which runs, they shouldn't wait behind queued prepares
+		PrepareScheduler.getInstance().invokeAll(tasks, true);
+		return true;
+	}
+
+	/**
+	 * Decode one tile, the part of the tile outside of the target region stays transparent
+	 */
+	private static Bitmap decodeTile(BitmapRegionDecoder decoder, Rect region, Rect target, int sampleSize,
+	                                 int tileLeft, int tileTop, int tileSize, Bitmap.Config config, @Nullable PrepareTrace trace) {
+		BitmapPool pool = BitmapPool.getInstance();
+		Bitmap tile = pool.obtain(tileSize, tileSize, config, trace);
+		Rect shown = new Rect(tileLeft, tileTop, tileLeft + tileSize, tileTop + tileSize);
+		if (!shown.intersect(target)) {
+			return tile;
+		}
+
+		long start = System.nanoTime();
+		Rect source = new Rect(
+				region.left + (int) ((long) (shown.left - target.left) * region.width() / target.width()),
+				region.top + (int) ((long) (shown.top - target.top) * region.height() / target.height()),
+				region.left + (int) (((long) (shown.right - target.left) * region.width() + target.width() - 1) / target.width()),
+				region.top + (int) (((long) (shown.bottom - target.top) * region.height() + target.height() - 1) / target.height()));
+		source.intersect(region);
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inSampleSize = sampleSize;
+		options.inPreferredConfig = config;
+		options.inMutable = true;
+		Bitmap decoded = decoder.decodeRegion(source, options);
+		if (trace != null) {
+			trace.addDecode(System.nanoTime() - start);
+			if (decoded != null) {
+				trace.onAllocated(decoded.getByteCount());
+			}
+		}
+		if (decoded == null) {
+			return tile;
+		}
+
+		start = System.nanoTime();
+		shown.offset(-tileLeft, -tileTop);
+		new Canvas(tile).drawBitmap(decoded, null, shown, null);
+		if (trace != null) {
+			trace.addScale(System.nanoTime() - start);
+		}
+		pool.adopt(decoded);
+		pool.put(decoded);
+		return tile;
+	}
+
+	@Nullable
+	private static BitmapRegionDecoder newRegionDecoder(Resources resources, int id) {
+		InputStream stream = null;
+		try {
+			stream = resources.openRawResource(id);
+			return BitmapRegionDecoder.newInstance(stream, false);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			closeQuietly(stream);
+		}
+	}
+
+	private static void closeQuietly(@Nullable InputStream stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	/**
+	 * @return largest power of two sample size, which keeps the decoded image not smaller than the target size
+	 */
+	static int calculateInSampleSize(int sourceWidth, int sourceHeight, int width, int height) {
+		int sampleSize = 1;
+		while (sourceWidth / (sampleSize << 1) >= width && sourceHeight / (sampleSize << 1) >= height) {
+			sampleSize <<= 1;
+		}
+		return sampleSize;
+	}
+
+	static int bytesPerPixel(Bitmap.Config config) {
+		if (config == null) {
+			return 4;
+		}
+		switch (config) {
+			case ALPHA_8:
+				return 1;
+
+			case RGB_565:
+			case ARGB_4444:
+				return 2;
+
+			default:
+				return 4;
+		}
+	}
+
+	/**
+	 * @return total bytes saved by sampled decoding since process start
+	 */
+	public static long getBytesSaved() {
+		return bytesSaved.get();
+	}
+}
@@ -0,0 +1,338 @@
+package com.serega.animatedview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of mutable bitmaps bucketed by size and config, reused for decoding (inBitmap) and scaling.
+ * <p>
+ * Bitmaps created by the library are reference counted: {@link Cache} and every {@link SquareGrid} showing a bitmap
+ * hold a reference, the bitmap returns to the pool when the last reference is released.
+ * Bitmaps supplied by the app are never pooled.
+ */
+public class BitmapPool {
+	/**
+	 * Size of a pool first requested by a decode or scale which has no context at hand
+	 */
+	public static final int DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * Free bitmaps waiting for reuse may take 1 / MEMORY_CLASS_PART of the heap limit,
+	 * less than the cache: a pooled bitmap only saves an allocation, not a decode
+	 */
+	private static final int MEMORY_CLASS_PART = 16;
+
+	private static BitmapPool instance;
+	private static int budget;
+
+	/**
+	 * Budget used while the app doesn't set its own
+	 */
+	private final int defaultSize;
+	private int maxSize;
+	private int size;
+	private final Map<Long, ArrayDeque<Bitmap>> buckets = new HashMap<>();
+
+	/**
+	 * Pooled bitmaps from the oldest to the newest, oldest are evicted first
+	 */
+	private final LinkedList<Bitmap> order = new LinkedList<>();
+
+	/**
+	 * Reference counts of bitmaps created by the library. Weak keys, so a bitmap lost by mistake is still collected.
+	 */
+	private final WeakHashMap<Bitmap, Integer> references = new WeakHashMap<>();
+
+	private int hitCount;
+	private int missCount;
+	private int putCount;
+	private int evictionCount;
+	private long reusedBytes;
+
+	private BitmapPool(int defaultSizeInBytes) {
+		defaultSize = defaultSizeInBytes;
+		maxSize = budget > 0 ? budget : defaultSize;
+	}
+
+	public static synchronized BitmapPool getInstance() {
+		if (instance == null) {
+			instance = new BitmapPool(DEFAULT_MAX_SIZE);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Get pool, budget of the new pool is based on the app memory class
+	 *
+	 * @param context any context
+	 * @return pool instance
+	 */
+	public static synchronized BitmapPool getInstance(Context context) {
+		if (instance == null) {
+			instance = new BitmapPool(MemoryClass.part(context, MEMORY_CLASS_PART));
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Set pool budget. The pool in use is resized in place, pooled bitmaps over the new budget are dropped.
+	 *
+	 * @param maxSizeInBytes budget in bytes, 0 - default budget of the pool: part of the memory class
+	 *                       if the pool was created with a context, otherwise {@link #DEFAULT_MAX_SIZE}
+	 */
+	public static synchronized void setBudget(int maxSizeInBytes) {
+		budget = maxSizeInBytes;
+		if (instance != null) {
+			synchronized (instance) {
+				instance.maxSize = budget > 0 ? budget : instance.defaultSize;
+				instance.trimToSize(instance.maxSize);
+			}
+		}
+	}
+
+	private static long bucketKey(int width, int height, Bitmap.Config config) {
+		return ((long) width << 32) | ((long) height << 4) | (config != null ? config.ordinal() : 0xF);
+	}
+
+	/**
+	 * Take bitmap of exactly this size and config from the pool, or create a new one.
+	 * Pixels are cleared, the bitmap is owned by the library and can be returned to the pool by {@link #release(Bitmap)}.
+	 *
+	 * @param width  bitmap width
+	 * @param height bitmap height
+	 * @param config bitmap config
+	 * @param trace  prepare to account a new allocation to or null
+	 * @return mutable bitmap
+	 */
+	synchronized Bitmap obtain(int width, int height, Bitmap.Config config, @Nullable PrepareTrace trace) {
+		Bitmap bitmap = take(bucketKey(width, height, config));
+		if (bitmap != null) {
+			hitCount++;
+			reusedBytes += bitmap.getByteCount();
+			bitmap.eraseColor(Color.TRANSPARENT);
+		} else {
+			missCount++;
+			bitmap = Bitmap.createBitmap(width, height, config);
+			if (trace != null) {
+				trace.onAllocated(bitmap.getByteCount());
+			}
+		}
+		references.put(bitmap, 0);
+		return bitmap;
+	}
+
+	/**
+	 * Take bitmap which can be used as BitmapFactory.Options.inBitmap
+	 *
+	 * @param width      decoded image width
+	 * @param height     decoded image height
+	 * @param config     decoded image config
+	 * @param sampleSize inSampleSize of the decode, before KitKat only 1 is supported
+	 * @return pooled bitmap or null
+	 */
+	@Nullable
+	synchronized Bitmap obtainForDecode(int width, int height, Bitmap.Config config, int sampleSize) {
+		Bitmap bitmap = null;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			//Sampled size may be rounded up by the decoder
+			int sampledWidth = (width + sampleSize - 1) / sampleSize;
+			int sampledHeight = (height + sampleSize - 1) / sampleSize;
+			long required = (long) sampledWidth * sampledHeight * BitmapDecoder.bytesPerPixel(config);
+			for (Bitmap candidate : order) {
+				if (candidate.getAllocationByteCount() >= required && (bitmap == null
+						|| candidate.getAllocationByteCount() < bitmap.getAllocationByteCount())) {
+					bitmap = candidate;
+				}
+			}
+			if (bitmap != null) {
+				remove(bitmap);
+			}
+		} else if (sampleSize == 1) {
+			bitmap = take(bucketKey(width, height, config));
+		}
+
+		if (bitmap != null) {
+			hitCount++;
+			reusedBytes += bitmap.getByteCount();
+		} else {
+			missCount++;
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Mark bitmap as created by the library, so it can return to the pool after the last reference is released
+	 *
+	 * @param bitmap bitmap created by the library
+	 */
+	synchronized void adopt(Bitmap bitmap) {
+		if (!references.containsKey(bitmap)) {
+			references.put(bitmap, 0);
+		}
+	}
+
+	/**
+	 * @param bitmap bitmap
+	 * @return true if the bitmap is created by the library and not returned to the pool yet
+	 */
+	synchronized boolean isOwned(Bitmap bitmap) {
+		return references.containsKey(bitmap);
+	}
+
+	/**
+	 * Add reference to the bitmap, does nothing for bitmaps supplied by the app
+	 *
+	 * @param bitmap bitmap or null
+	 */
+	synchronized void retain(@Nullable Bitmap bitmap) {
+		if (bitmap == null) {
+			return;
+		}
+		Integer count = references.get(bitmap);
+		if (count != null) {
+			references.put(bitmap, count + 1);
+		}
+	}
+
+	/**
+	 * Release reference to the bitmap, bitmap returns to the pool when the last reference is released
+	 *
+	 * @param bitmap bitmap or null
+	 */
+	synchronized void release(@Nullable Bitmap bitmap) {
+		if (bitmap == null) {
+			return;
+		}
+		Integer count = references.get(bitmap);
+		if (count == null) {
+			return;
+		}
+		if (count > 1) {
+			references.put(bitmap, count - 1);
+		} else {
+			references.remove(bitmap);
+			put(bitmap);
+		}
+	}
+
+	/**
+	 * Return bitmap which is not used anymore to the pool
+	 *
+	 * @param bitmap unused bitmap
+	 */
+	synchronized void put(Bitmap bitmap) {
+		if (bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getByteCount() > maxSize) {
+			return;
+		}
+		references.remove(bitmap);
+		long key = bucketKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+		ArrayDeque<Bitmap> bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = new ArrayDeque<>();
+			buckets.put(key, bucket);
+		}
+		bucket.addLast(bitmap);
+		order.addLast(bitmap);
+		size += bitmap.getByteCount();
+		putCount++;
+		trimToSize(maxSize);
+	}
+
+	/**
+	 * Drop all pooled bitmaps, e.g. on low memory
+	 */
+	public synchronized void clear() {
+		trimToSize(0);
+	}
+
+	@Nullable
+	private Bitmap take(long key) {
+		ArrayDeque<Bitmap> bucket = buckets.get(key);
+		if (bucket == null || bucket.isEmpty()) {
+			return null;
+		}
+		Bitmap bitmap = bucket.pollLast();
+		order.remove(bitmap);
+		size -= bitmap.getByteCount();
+		return bitmap;
+	}
+
+	private void remove(Bitmap bitmap) {
+		ArrayDeque<Bitmap> bucket = buckets.get(bucketKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig()));
+		if (bucket != null) {
+			bucket.remove(bitmap);
+		}
+		order.remove(bitmap);
+		size -= bitmap.getByteCount();
+	}
+
+	private void trimToSize(int maxSizeInBytes) {
+		Iterator<Bitmap> iterator = order.iterator();
+		while (size > maxSizeInBytes && iterator.hasNext()) {
+			Bitmap bitmap = iterator.next();
+			iterator.remove();
+			ArrayDeque<Bitmap> bucket = buckets.get(bucketKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig()));
+			if (bucket != null) {
+				bucket.remove(bitmap);
+			}
+			size -= bitmap.getByteCount();
+			evictionCount++;
+			bitmap.recycle();
+		}
+	}
+
+	/**
+	 * @return bytes used by pooled bitmaps
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return budget in bytes
+	 */
+	public synchronized int maxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return count of requests served with a pooled bitmap
+	 */
+	public synchronized int hitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return count of requests which needed a new allocation
+	 */
+	public synchronized int missCount() {
+		return missCount;
+	}
+
+	public synchronized int putCount() {
+		return putCount;
+	}
+
+	public synchronized int evictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return total bytes served from the pool instead of new allocations
+	 */
+	public synchronized long reusedBytes() {
+		return reusedBytes;
+	}
+}
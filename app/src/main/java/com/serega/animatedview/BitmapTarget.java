@@ -0,0 +1,69 @@
+package com.serega.animatedview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * Draws to an offscreen bitmap. Needs no window or display,
+ * used to render frames for snapshots and to measure render throughput.
+ */
+final class BitmapTarget implements RenderTarget {
+	private final Bitmap bitmap;
+	private final Canvas canvas;
+	private int postedFrames;
+
+	/**
+	 * @param width  target width
+	 * @param height target height
+	 */
+	BitmapTarget(int width, int height) {
+		this(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+	}
+
+	/**
+	 * @param bitmap mutable bitmap to draw to
+	 */
+	BitmapTarget(Bitmap bitmap) {
+		this.bitmap = bitmap;
+		this.canvas = new Canvas(bitmap);
+	}
+
+	@Override
+	public int getWidth() {
+		return bitmap.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return bitmap.getHeight();
+	}
+
+	@Override
+	public Canvas lockCanvas(Rect dirty) {
+		//Bitmap keeps previous frame, so only the dirty area is repainted, same as on a surface
+		canvas.save();
+		canvas.clipRect(dirty);
+		return canvas;
+	}
+
+	@Override
+	public void unlockCanvasAndPost(Canvas canvas) {
+		canvas.restore();
+		postedFrames++;
+	}
+
+	/**
+	 * @return bitmap with the last posted frame
+	 */
+	Bitmap getBitmap() {
+		return bitmap;
+	}
+
+	/**
+	 * @return count of frames drawn to the bitmap
+	 */
+	int getPostedFrames() {
+		return postedFrames;
+	}
+}
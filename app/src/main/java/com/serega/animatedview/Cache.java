@@ -1,33 +1,189 @@
 package com.serega.animatedview;
 
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.support.annotation.Nullable;
 import android.util.LruCache;
 
-import java.util.List;
-
+/**
+ * Memory budgeted cache of scaled bitmaps shared by all AnimatedViews.
+ * Entries are measured in bytes, budget is a part of the app memory class unless the app sets its own.
+ * Cache holds a {@link BitmapPool} reference to every cached bitmap.
+ */
 public class Cache {
-	private final LruCache<Integer, Bitmap> cache;
+	/**
+	 * Size of a cache first requested by {@link #getInstance()}, before any view could size it from the memory class
+	 */
+	public static final int DEFAULT_MAX_SIZE = 5 * 1024 * 1024;
+
+	/**
+	 * Scaled images of shown and upcoming views may take 1 / MEMORY_CLASS_PART of the heap limit
+	 */
+	private static final int MEMORY_CLASS_PART = 8;
+
 	private static Cache instance;
+	private static int budget;
+	private static volatile EvictionListener evictionListener;
+
+	private final LruCache<CacheKey, Bitmap> cache;
+
+	public interface EvictionListener {
+		/**
+		 * Called when a bitmap supplied by the app leaves the cache: evicted, removed or replaced with another bitmap.
+		 * The bitmap may still be drawn by views showing it, it can be recycled once no view shows it.
+		 * Bitmaps created by the library are not reported, they return to {@link BitmapPool}.
+		 *
+		 * @param key    cache key
+		 * @param bitmap bitmap supplied by the app
+		 */
+		void onEvicted(CacheKey key, Bitmap bitmap);
+	}
+
+	private Cache(int maxSizeInBytes) {
+		cache = new LruCache<CacheKey, Bitmap>(maxSizeInBytes) {
+			@Override
+			protected int sizeOf(CacheKey key, Bitmap value) {
+				return value.getByteCount();
+			}
 
-	private Cache(){
-		cache = new LruCache<>(5 * 1024 * 1024);
+			@Override
+			protected void entryRemoved(boolean evicted, CacheKey key, Bitmap oldValue, Bitmap newValue) {
+				BitmapPool pool = BitmapPool.getInstance();
+				EvictionListener listener = evictionListener;
+				if (listener != null && oldValue != newValue && !pool.isOwned(oldValue)) {
+					listener.onEvicted(key, oldValue);
+				}
+				pool.release(oldValue);
+			}
+		};
 	}
 
-	public static Cache getInstance(){
-		if(instance == null){
-			instance = new Cache();
+	public static synchronized Cache getInstance() {
+		if (instance == null) {
+			instance = new Cache(budget > 0 ? budget : DEFAULT_MAX_SIZE);
 		}
 
 		return instance;
 	}
 
-	public void put(int key, Bitmap bitmap){
+	/**
+	 * Get cache, budget of the new cache is based on the app memory class
+	 *
+	 * @param context any context
+	 * @return cache instance
+	 */
+	public static synchronized Cache getInstance(Context context) {
+		if (instance == null) {
+			instance = new Cache(budget > 0 ? budget : MemoryClass.part(context, MEMORY_CLASS_PART));
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Set cache budget. Current cache content is dropped, the next request creates a cache of the new size.
+	 *
+	 * @param maxSizeInBytes budget in bytes, 0 - part of the memory class,
+	 *                       or {@link #DEFAULT_MAX_SIZE} if the next cache is requested without a context
+	 */
+	public static synchronized void setBudget(int maxSizeInBytes) {
+		budget = maxSizeInBytes;
+		if (instance != null) {
+			instance.clear();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Set listener notified when bitmaps supplied by the app leave the cache
+	 *
+	 * @param listener listener or null
+	 */
+	public static synchronized void setEvictionListener(@Nullable EvictionListener listener) {
+		evictionListener = listener;
+	}
+
+	public void put(CacheKey key, Bitmap bitmap){
+		BitmapPool.getInstance().retain(bitmap);
 		cache.put(key, bitmap);
 	}
 
+	/**
+	 * Get bitmap and add {@link BitmapPool} reference to it, so it doesn't return to the pool
+	 * if evicted while in use. The reference should be released with {@link BitmapPool#release(Bitmap)}.
+	 *
+	 * @param key wanted bitmap
+	 * @return cached bitmap or null
+	 */
 	@Nullable
-	public Bitmap get(int key){
+	Bitmap acquire(CacheKey key) {
+		BitmapPool pool = BitmapPool.getInstance();
+		//Eviction releases the reference under the same lock, so it can't happen between get and retain
+		synchronized (pool) {
+			Bitmap bitmap = cache.get(key);
+			pool.retain(bitmap);
+			return bitmap;
+		}
+	}
+
+	@Nullable
+	public Bitmap get(CacheKey key){
 		return cache.get(key);
 	}
+
+	/**
+	 * Find the smallest cached bitmap of the same source and config, which is not smaller than the key size.
+	 * Scaling it down is much cheaper than decoding the source again.
+	 *
+	 * Reference to the bitmap is added like in {@link #acquire(CacheKey)}.
+	 *
+	 * @param key wanted bitmap
+	 * @return larger bitmap of the same source or null
+	 */
+	@Nullable
+	Bitmap acquireClosestLarger(CacheKey key) {
+		CacheKey bestKey = null;
+		for (CacheKey candidate : cache.snapshot().keySet()) {
+			if (candidate.getWidth() < key.getWidth() || candidate.getHeight() < key.getHeight() || !candidate.isSameSource(key)) {
+				continue;
+			}
+			if (bestKey == null || candidate.getWidth() * candidate.getHeight() < bestKey.getWidth() * bestKey.getHeight()) {
+				bestKey = candidate;
+			}
+		}
+		return bestKey != null ? acquire(bestKey) : null;
+	}
+
+	/**
+	 * Drop all bitmaps, e.g. on low memory
+	 */
+	public void clear() {
+		cache.evictAll();
+	}
+
+	/**
+	 * @return bytes used by cached bitmaps
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * @return budget in bytes
+	 */
+	public int maxSize() {
+		return cache.maxSize();
+	}
+
+	public int hitCount() {
+		return cache.hitCount();
+	}
+
+	public int missCount() {
+		return cache.missCount();
+	}
+
+	public int evictionCount() {
+		return cache.evictionCount();
+	}
 }
@@ -0,0 +1,165 @@
+package com.serega.animatedview;
+
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Key of a scaled bitmap in {@link Cache}: source identity, target size, config and scale mode.
+ * Key of a tile also has the position and size of the tile in the scaled image.
+ * Bitmap sources are compared by reference and held weakly, so the key doesn't keep the source alive.
+ */
+public final class CacheKey {
+	private static final int NO_RESOURCE = -1;
+
+	private final int resourceId;
+	private final WeakReference<Bitmap> source;
+	private final int sourceHash;
+	private final int width;
+	private final int height;
+	private final Bitmap.Config config;
+	private final int scaleMode;
+
+	/**
+	 * Square part of the scaled image, tileSize is 0 for the whole image
+	 */
+	private final int tileLeft;
+	private final int tileTop;
+	private final int tileSize;
+
+	private CacheKey(int resourceId, Bitmap source, int width, int height, Bitmap.Config config, int scaleMode) {
+		this(resourceId, source, width, height, config, scaleMode, 0, 0, 0);
+	}
+
+	private CacheKey(int resourceId, Bitmap source, int width, int height, Bitmap.Config config, int scaleMode,
+	                 int tileLeft, int tileTop, int tileSize) {
+		this.resourceId = resourceId;
+		this.source = source != null ? new WeakReference<>(source) : null;
+		this.sourceHash = source != null ? System.identityHashCode(source) : resourceId;
+		this.width = width;
+		this.height = height;
+		this.config = config;
+		this.scaleMode = scaleMode;
+		this.tileLeft = tileLeft;
+		this.tileTop = tileTop;
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * @param resourceId drawable resource id
+	 * @param width      target width
+	 * @param height     target height
+	 * @param config     target config
+	 * @param scaleMode  scale mode, see {@link BitmapDecoder#SCALE_MODE_FIT_XY}
+	 * @return key of the resource scaled to the target size
+	 */
+	static CacheKey forResource(int resourceId, int width, int height, Bitmap.Config config, int scaleMode) {
+		return new CacheKey(resourceId, null, width, height, config, scaleMode);
+	}
+
+	/**
+	 * @param source    bitmap supplied by the app
+	 * @param width     target width
+	 * @param height    target height
+	 * @param config    target config
+	 * @param scaleMode scale mode, see {@link BitmapDecoder#SCALE_MODE_FIT_XY}
+	 * @return key of the bitmap scaled to the target size
+	 */
+	static CacheKey forBitmap(Bitmap source, int width, int height, Bitmap.Config config, int scaleMode) {
+		return new CacheKey(NO_RESOURCE, source, width, height, config, scaleMode);
+	}
+
+	/**
+	 * @param resourceId drawable resource id
+	 * @param width      width of the scaled image
+	 * @param height     height of the scaled image
+	 * @param tileLeft   left of the tile in the scaled image
+	 * @param tileTop    top of the tile in the scaled image
+	 * @param tileSize   side of the tile
+	 * @param config     target config
+	 * @param scaleMode  scale mode, see {@link BitmapDecoder#SCALE_MODE_FIT_XY}
+	 * @return key of one tile of the resource scaled to the target size
+	 */
+	static CacheKey forTile(int resourceId, int width, int height, int tileLeft, int tileTop, int tileSize,
+	                        Bitmap.Config config, int scaleMode) {
+		return new CacheKey(resourceId, null, width, height, config, scaleMode, tileLeft, tileTop, tileSize);
+	}
+
+	/**
+	 * @param another key to compare
+	 * @return true if both keys describe the whole image of the same source in the same config and scale mode,
+	 * size may differ
+	 */
+	boolean isSameSource(CacheKey another) {
+		return tileSize == 0 && another.tileSize == 0 && isSameImage(another);
+	}
+
+	private boolean isSameImage(CacheKey another) {
+		if (resourceId != another.resourceId || config != another.config || scaleMode != another.scaleMode) {
+			return false;
+		}
+		if (source == null || another.source == null) {
+			return source == another.source;
+		}
+		Bitmap bitmap = source.get();
+		return bitmap != null && bitmap == another.source.get();
+	}
+
+	/**
+	 * @return file name of the key in {@link DiskCache} or null if the source is a bitmap supplied by the app
+	 */
+	@Nullable
+	String getDiskName() {
+		if (source != null) {
+			return null;
+		}
+		return "r" + resourceId + "_" + width + "x" + height + "_" + config + "_" + scaleMode
+				+ (tileSize != 0 ? "_" + tileLeft + "_" + tileTop + "_" + tileSize : "");
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public Bitmap.Config getConfig() {
+		return config;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof CacheKey)) {
+			return false;
+		}
+		CacheKey another = (CacheKey) o;
+		return width == another.width && height == another.height && tileLeft == another.tileLeft
+				&& tileTop == another.tileTop && tileSize == another.tileSize && isSameImage(another);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = sourceHash;
+		result = 31 * result + width;
+		result = 31 * result + height;
+		result = 31 * result + (config != null ? config.hashCode() : 0);
+		result = 31 * result + scaleMode;
+		result = 31 * result + tileLeft;
+		result = 31 * result + tileTop;
+		result = 31 * result + tileSize;
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return (source != null ? "bitmap@" + Integer.toHexString(sourceHash) : "resource#" + resourceId)
+				+ " " + width + "x" + height + " " + config + " mode " + scaleMode
+				+ (tileSize != 0 ? " tile " + tileLeft + "," + tileTop + " " + tileSize : "");
+	}
+}
@@ -2,12 +2,14 @@ package com.serega.animatedview;
 
 import android.graphics.Color;
 
+import com.serega.animatedview.core.FlipAnimation;
+
 public class Constants {
 	public static final float DEFAULT_SIZE_DP = 150;
 	public static final int DEFAULT_SQUARES_COUNT_HORIZONTAL = 4;
-	public static final int DEFAULT_FLIP_SPEED = 6;    //look at attrs
+	public static final int DEFAULT_FLIP_SPEED = FlipAnimation.DEFAULT_STEP;    //look at attrs
 	public static final int DEFAULT_BACKGROUND_COLOR = Color.LTGRAY;
-	public static final long DEFAULT_MAX_DELAY = 1100;  //In millis
+	public static final long DEFAULT_MAX_DELAY = FlipAnimation.DEFAULT_MAX_DELAY;  //In millis
 
 	private Constants(){
 
@@ -0,0 +1,72 @@
+package com.serega.animatedview;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.WeakHashMap;
+
+/**
+ * Scenes of views detached from their window. A view scrolled out of a list and back keeps its squares,
+ * so they are shown right away. Scenes are released when the system runs low on memory.
+ */
+final class DetachedScenes implements ComponentCallbacks2 {
+	private static DetachedScenes instance;
+
+	/**
+	 * Weak keys, a detached view which is never attached again is still collected
+	 */
+	private final WeakHashMap<FlipController, Boolean> controllers = new WeakHashMap<>();
+
+	private DetachedScenes() {
+	}
+
+	static synchronized DetachedScenes getInstance(Context context) {
+		if (instance == null) {
+			instance = new DetachedScenes();
+			context.getApplicationContext().registerComponentCallbacks(instance);
+		}
+
+		return instance;
+	}
+
+	synchronized void add(FlipController controller) {
+		controllers.put(controller, Boolean.TRUE);
+	}
+
+	synchronized void remove(FlipController controller) {
+		controllers.remove(controller);
+	}
+
+	/**
+	 * Release all detached scenes, called on the main thread
+	 */
+	void releaseAll() {
+		List<FlipController> released;
+		synchronized (this) {
+			released = new ArrayList<>(controllers.keySet());
+			controllers.clear();
+		}
+		for (FlipController controller : released) {
+			controller.release();
+		}
+	}
+
+	@Override
+	public void onTrimMemory(int level) {
+		if (level >= TRIM_MEMORY_RUNNING_LOW) {
+			releaseAll();
+		}
+	}
+
+	@Override
+	public void onLowMemory() {
+		releaseAll();
+	}
+
+	@Override
+	public void onConfigurationChanged(Configuration newConfig) {
+	}
+}
@@ -0,0 +1,396 @@
+package com.serega.animatedview;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Persistent cache of scaled resource images in the app cache directory, so images shown before
+ * are not decoded again after the process restarts.
+ * Pixels are stored raw and read back through a memory mapped file straight into a pooled bitmap.
+ * Files are written on a background thread and evicted least recently used first when the cache exceeds its budget.
+ * Images of bitmaps supplied by the app are not stored, they can't be recognized in another process.
+ */
+public class DiskCache {
+	/**
+	 * Space in the app cache directory, raw pixels of a few dozen view sized images fit in it
+	 */
+	public static final int DEFAULT_MAX_SIZE = 20 * 1024 * 1024;
+
+	/**
+	 * Files live in DIRECTORY-&lt;app update time&gt;, resource ids of another build may point to other images
+	 */
+	private static final String DIRECTORY = "animatedview";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * Header: magic, width, height, config ordinal
+	 */
+	private static final int MAGIC = 0x41564431;
+	private static final int HEADER_SIZE = 16;
+
+	private static DiskCache instance;
+	private static int budget;
+
+	private final File parent;
+	private final File directory;
+	private int maxSize;
+	private long size;
+	private boolean loaded;
+
+	/**
+	 * File sizes from the least to the most recently used
+	 */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(new WriterThreadFactory());
+
+	/**
+	 * Reused by the writer thread
+	 */
+	private ByteBuffer writeBuffer;
+
+	private int hitCount;
+	private int missCount;
+	private int writeCount;
+	private int evictionCount;
+
+	private DiskCache(File parent, File directory, int maxSizeInBytes) {
+		this.parent = parent;
+		this.directory = directory;
+		maxSize = maxSizeInBytes;
+	}
+
+	/**
+	 * Get cache, files are not touched until the first read or write
+	 *
+	 * @param context any context
+	 * @return cache instance
+	 */
+	public static synchronized DiskCache getInstance(Context context) {
+		if (instance == null) {
+			long version;
+			try {
+				version = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+			} catch (PackageManager.NameNotFoundException e) {
+				version = 0;
+			}
+			File parent = context.getCacheDir();
+			instance = new DiskCache(parent, new File(parent, DIRECTORY + "-" + version), budget > 0 ? budget : DEFAULT_MAX_SIZE);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Set how much space stored files may take, least recently used files over the budget are deleted
+	 *
+	 * @param maxSizeInBytes budget in bytes, 0 - {@link #DEFAULT_MAX_SIZE}
+	 */
+	public static synchronized void setBudget(int maxSizeInBytes) {
+		budget = maxSizeInBytes;
+		if (instance != null) {
+			synchronized (instance) {
+				instance.maxSize = budget > 0 ? budget : DEFAULT_MAX_SIZE;
+				if (instance.loaded) {
+					instance.trimToSize(instance.maxSize);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read bitmap stored for the key
+	 *
+	 * @param key   cache key
+	 * @param trace prepare to record read time and allocations to or null
+	 * @return bitmap owned by the library, not referenced yet, or null if there's no valid file
+	 */
+	@Nullable
+	Bitmap get(CacheKey key, @Nullable PrepareTrace trace) {
+		String name = key.getDiskName();
+		if (name == null) {
+			return null;
+		}
+		synchronized (this) {
+			ensureLoaded();
+			if (entries.get(name) == null) {
+				missCount++;
+				return null;
+			}
+		}
+
+		long start = System.nanoTime();
+		File file = new File(directory, name);
+		RandomAccessFile input = null;
+		Bitmap bitmap = null;
+		try {
+			input = new RandomAccessFile(file, "r");
+			FileChannel channel = input.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			int magic = buffer.getInt();
+			int width = buffer.getInt();
+			int height = buffer.getInt();
+			int configOrdinal = buffer.getInt();
+			Bitmap.Config config = key.getConfig();
+			if (magic != MAGIC || config == null || configOrdinal != config.ordinal()
+					|| buffer.remaining() < (long) width * height * BitmapDecoder.bytesPerPixel(config)) {
+				throw new IOException("Corrupted cache file " + name);
+			}
+			bitmap = BitmapPool.getInstance().obtain(width, height, config, trace);
+			bitmap.copyPixelsFromBuffer(buffer);
+			file.setLastModified(System.currentTimeMillis());
+			synchronized (this) {
+				hitCount++;
+			}
+			return bitmap;
+		} catch (IOException | RuntimeException e) {
+			if (bitmap != null) {
+				BitmapPool.getInstance().put(bitmap);
+			}
+			remove(name);
+			return null;
+		} finally {
+			closeQuietly(input);
+			if (trace != null) {
+				trace.addDecode(System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * Store bitmap in background, does nothing if the key is already stored or the bitmap is supplied by the app
+	 *
+	 * @param key    cache key
+	 * @param bitmap scaled bitmap, referenced until it is written
+	 */
+	void put(CacheKey key, final Bitmap bitmap) {
+		final String name = key.getDiskName();
+		if (name == null || bitmap.getConfig() == null) {
+			return;
+		}
+		synchronized (this) {
+			if (entries.containsKey(name)) {
+				return;
+			}
+		}
+		final BitmapPool pool = BitmapPool.getInstance();
+		pool.retain(bitmap);
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					write(name, bitmap);
+				} finally {
+					pool.release(bitmap);
+				}
+			}
+		});
+	}
+
+	private void write(String name, Bitmap bitmap) {
+		long length = HEADER_SIZE + (long) bitmap.getByteCount();
+		synchronized (this) {
+			ensureLoaded();
+			if (entries.containsKey(name) || length > maxSize) {
+				return;
+			}
+		}
+
+		if (writeBuffer == null || writeBuffer.capacity() < length) {
+			writeBuffer = ByteBuffer.allocate((int) length);
+		}
+		ByteBuffer buffer = writeBuffer;
+		buffer.clear();
+		buffer.putInt(MAGIC).putInt(bitmap.getWidth()).putInt(bitmap.getHeight()).putInt(bitmap.getConfig().ordinal());
+		bitmap.copyPixelsToBuffer(buffer);
+		buffer.flip();
+
+		//Written to a temporary file first, a process killed while writing never leaves a truncated entry
+		File temp = new File(directory, name + TEMP_SUFFIX);
+		FileOutputStream output = null;
+		boolean written = false;
+		try {
+			output = new FileOutputStream(temp);
+			FileChannel channel = output.getChannel();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			output.close();
+			output = null;
+			written = temp.renameTo(new File(directory, name));
+		} catch (IOException e) {
+			//Entry is just not stored
+		} finally {
+			closeQuietly(output);
+			if (!written) {
+				temp.delete();
+			}
+		}
+		if (!written) {
+			return;
+		}
+
+		synchronized (this) {
+			Long previous = entries.put(name, length);
+			size += length - (previous != null ? previous : 0);
+			writeCount++;
+			trimToSize(maxSize);
+		}
+	}
+
+	private synchronized void remove(String name) {
+		Long length = entries.remove(name);
+		if (length != null) {
+			size -= length;
+		}
+		new File(directory, name).delete();
+	}
+
+	/**
+	 * Read the list of stored files on first use, files of older app builds are deleted
+	 */
+	private void ensureLoaded() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		File[] directories = parent.listFiles();
+		if (directories != null) {
+			for (File stale : directories) {
+				if (stale.isDirectory() && stale.getName().startsWith(DIRECTORY + "-") && !stale.equals(directory)) {
+					deleteDirectory(stale);
+				}
+			}
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			return;
+		}
+
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long l = lhs.lastModified();
+				long r = rhs.lastModified();
+				return l < r ? -1 : (l == r ? 0 : 1);
+			}
+		});
+		for (File file : files) {
+			if (file.getName().endsWith(TEMP_SUFFIX)) {
+				file.delete();
+				continue;
+			}
+			entries.put(file.getName(), file.length());
+			size += file.length();
+		}
+		trimToSize(maxSize);
+	}
+
+	private void trimToSize(long maxSizeInBytes) {
+		Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+		while (size > maxSizeInBytes && iterator.hasNext()) {
+			Map.Entry<String, Long> entry = iterator.next();
+			iterator.remove();
+			size -= entry.getValue();
+			new File(directory, entry.getKey()).delete();
+			evictionCount++;
+		}
+	}
+
+	private static void deleteDirectory(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	private static void closeQuietly(@Nullable Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	/**
+	 * Delete all stored files
+	 */
+	public synchronized void clear() {
+		ensureLoaded();
+		trimToSize(0);
+	}
+
+	/**
+	 * @return bytes used by stored files
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * @return budget in bytes
+	 */
+	public synchronized int maxSize() {
+		return maxSize;
+	}
+
+	public synchronized int hitCount() {
+		return hitCount;
+	}
+
+	public synchronized int missCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return count of files written
+	 */
+	public synchronized int writeCount() {
+		return writeCount;
+	}
+
+	public synchronized int evictionCount() {
+		return evictionCount;
+	}
+
+	private static class WriterThreadFactory implements ThreadFactory {
+		@Override
+		public Thread newThread(final Runnable r) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					r.run();
+				}
+			}, "AnimatedView disk cache");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package com.serega.animatedview;
+
+/**
+ * Render loop with its own thread for a single view
+ */
+final class DrawThread extends Thread implements RenderLoop {
+	private final RenderScheduler scheduler = new RenderScheduler();
+	private final Renderable renderable;
+	private volatile boolean isRunning = true;
+
+	/**
+	 * Should be created on the main thread, see {@link RenderScheduler}
+	 *
+	 * @param renderable view to render
+	 */
+	DrawThread(Renderable renderable) {
+		this.renderable = renderable;
+	}
+
+	@Override
+	public void requestFrame() {
+		scheduler.requestFrame();
+	}
+
+	@Override
+	public void quit() {
+		boolean retry = true;
+		isRunning = false;
+		scheduler.release();
+		while (retry) {
+			try {
+				join();
+				retry = false;
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		super.run();
+		scheduler.requestFrame();
+
+		while (isRunning) {
+			try {
+				if (!scheduler.awaitFrame()) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				break;
+			}
+
+			//Keep vsync frames coming only while something is moving, otherwise park until next flip/nextBitmap/clear
+			if (renderable.renderFrame()) {
+				scheduler.requestFrame();
+			}
+		}
+	}
+}
@@ -0,0 +1,567 @@
+package com.serega.animatedview;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+import com.serega.animatedview.core.InterpolatorTable;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Prepares squares and runs the render thread for a view. Doesn't depend on the kind of the view,
+ * the view only reports when its {@link RenderTarget} is created, resized and destroyed.
+ */
+class FlipController {
+	private static final int EMPTY_VALUE = -1;
+	private final View host;
+	private volatile Session session;
+	private volatile RenderLoop renderLoop;
+	private volatile boolean windowVisible = true;
+	private boolean sharedRenderThread;
+	private int squaresHorizontal = Constants.DEFAULT_SQUARES_COUNT_HORIZONTAL;
+	private int marginBetween;
+	private int flipSpeed = Constants.DEFAULT_FLIP_SPEED;
+	private int backgroundColor = Constants.DEFAULT_BACKGROUND_COLOR;
+	private long maxDelayValue;
+	private int bitmapFront = EMPTY_VALUE;
+	private int bitmapBack = EMPTY_VALUE;
+	private boolean needAnimation = true;
+	private boolean showProgressBar = true;
+	private int renderMode = SquareGrid.RENDER_MODE_SQUARES;
+	private int scaleMode = BitmapDecoder.SCALE_MODE_FIT_XY;
+	private boolean tiledDecoding;
+	private boolean progressiveReveal;
+	private boolean diskCache;
+	private InterpolatorTable interpolator = InterpolatorTable.LINEAR;
+
+	/**
+	 * Clock of the animation, sampled once per frame by the draw thread
+	 */
+	private volatile FrameClock clock = FrameClock.SYSTEM;
+
+	/**
+	 * Frame timing, null while metrics are disabled
+	 */
+	private volatile FrameMetrics metrics;
+	private volatile boolean metricsEnabled;
+	private volatile Future<SquareGrid> futurePrepare;
+
+	/**
+	 * Number of the latest prepare request, results of older requests are dropped
+	 */
+	private volatile int prepareGeneration;
+
+	/**
+	 * Prepared squares waiting to be picked up by the draw thread on its next frame
+	 */
+	private final AtomicReference<PreparedSquares> preparedSquares = new AtomicReference<>();
+
+	/**
+	 * Flip requested by the app, applied by the draw thread on its next frame
+	 */
+	private final AtomicBoolean pendingFlip = new AtomicBoolean();
+	private PrepareProgressCallback prepareCallback;
+	private PrepareUtils utils;
+	private final Prefetcher prefetcher;
+
+	/**
+	 * Width squares are prepared for, scene is kept for a new target of the same width
+	 */
+	private int sceneWidth = EMPTY_VALUE;
+
+	interface PrepareProgressCallback {
+		void onPrepareStart();
+
+		void onPrepareFinish();
+	}
+
+	/**
+	 * @param host view showing the squares
+	 */
+	FlipController(View host) {
+		this.host = host;
+		prefetcher = new Prefetcher(host.getContext());
+	}
+
+	/**
+	 * Measure square view, same as AnimatedContainer
+	 *
+	 * @return size of the view
+	 */
+	static int measureSize(View view, int widthMeasureSpec) {
+		int mode = View.MeasureSpec.getMode(widthMeasureSpec);
+		int size = 0;
+		switch (mode) {
+			case View.MeasureSpec.EXACTLY:
+				size = View.MeasureSpec.getSize(widthMeasureSpec);
+				break;
+
+			case View.MeasureSpec.AT_MOST:
+				size = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, Constants.DEFAULT_SIZE_DP, view.getContext().getResources().getDisplayMetrics());
+				break;
+		}
+		return size;
+	}
+
+	void init(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
+		if (attrs != null) {
+			TypedArray a = context.getTheme().obtainStyledAttributes(attrs, R.styleable.AnimatedContainer, defStyleAttr, defStyleRes);
+			squaresHorizontal = a.getInt(R.styleable.AnimatedContainer_squaresCountHorizontal, Constants.DEFAULT_SQUARES_COUNT_HORIZONTAL);
+			marginBetween = a.getDimensionPixelSize(R.styleable.AnimatedContainer_marginBetweenSquares, 0);
+			flipSpeed = a.getInt(R.styleable.AnimatedContainer_flipSpeed, Constants.DEFAULT_FLIP_SPEED);
+			backgroundColor = a.getColor(R.styleable.AnimatedContainer_backgroundColor, Constants.DEFAULT_BACKGROUND_COLOR);
+			maxDelayValue = a.getInt(R.styleable.AnimatedContainer_maxDelayValueInMillis, EMPTY_VALUE);
+			bitmapFront = a.getResourceId(R.styleable.AnimatedContainer_drawableFront, EMPTY_VALUE);
+			bitmapBack = a.getResourceId(R.styleable.AnimatedContainer_drawableBack, EMPTY_VALUE);
+			needAnimation = a.getBoolean(R.styleable.AnimatedContainer_animateBitmapChange, true);
+			showProgressBar = a.getBoolean(R.styleable.AnimatedContainer_showSmallProgressBar, true);
+			setMetricsEnabled(a.getBoolean(R.styleable.AnimatedContainer_metricsEnabled, false));
+			renderMode = a.getInt(R.styleable.AnimatedContainer_renderMode, SquareGrid.RENDER_MODE_SQUARES);
+			scaleMode = a.getInt(R.styleable.AnimatedContainer_scaleMode, BitmapDecoder.SCALE_MODE_FIT_XY);
+			tiledDecoding = a.getBoolean(R.styleable.AnimatedContainer_tiledDecoding, false);
+			progressiveReveal = a.getBoolean(R.styleable.AnimatedContainer_progressiveReveal, false);
+			diskCache = a.getBoolean(R.styleable.AnimatedContainer_diskCache, false);
+			sharedRenderThread = a.getBoolean(R.styleable.AnimatedContainer_sharedRenderThread, false);
+			a.recycle();
+		}
+	}
+
+	void setPrepareCallback(PrepareProgressCallback callback) {
+		prepareCallback = callback;
+	}
+
+	/**
+	 * Target is ready, start rendering. Called on the main thread.
+	 * If the previous target had the same width, its squares and their flip state are shown right away,
+	 * otherwise squares are prepared for the new size.
+	 *
+	 * @param target target to draw to
+	 */
+	void onTargetCreated(RenderTarget target) {
+		SceneRenderer renderer;
+		Session previous = session;
+		if (previous != null && target.getWidth() == sceneWidth) {
+			renderer = previous.renderer;
+			renderer.invalidate();
+		} else {
+			if (previous != null) {
+				previous.renderer.release();
+			}
+			renderer = new SceneRenderer(backgroundColor);
+			prepareScene(target.getWidth());
+		}
+
+		session = new Session(target, renderer);
+		if (sharedRenderThread) {
+			renderLoop = SharedRenderThread.getInstance().attach(session);
+		} else {
+			DrawThread thread = new DrawThread(session);
+			renderLoop = thread;
+			thread.start();
+		}
+	}
+
+	private void prepareScene(int width) {
+		showProgressBar();
+		sceneWidth = width;
+		if (utils != null) {
+			//Keep images and state set since the scene was created
+			utils.setViewWidth(width);
+			prefetcher.setSettings(utils);
+			requestPrepare(false);
+			return;
+		}
+		utils = new PrepareUtils(host.getContext());
+		utils.setViewWidth(width)
+				.setFrontBitmap(bitmapFront)
+				.setBackBitmap(bitmapBack)
+				.setSquaresCountHorizontal(squaresHorizontal)
+				.setMarginBetween(marginBetween)
+				.setFlipSpeed(flipSpeed)
+				.useAnimation(needAnimation)
+				.setMaxDelayValue(maxDelayValue)
+				.setRenderMode(renderMode)
+				.setScaleMode(scaleMode)
+				.setTiledDecoding(tiledDecoding)
+				.setProgressiveReveal(progressiveReveal)
+				.useDiskCache(diskCache)
+				.setInterpolator(interpolator);
+		prefetcher.setSettings(utils);
+		requestPrepare(false);
+	}
+
+	/**
+	 * Target was resized or its content was lost. Squares are prepared again for a new width,
+	 * the old squares are shown until the new ones are ready.
+	 *
+	 * @param width new width of the target
+	 */
+	void onTargetChanged(int width) {
+		Session current = session;
+		if (current == null) {
+			return;
+		}
+		current.renderer.invalidate();
+		if (width != sceneWidth) {
+			prepareScene(width);
+		}
+		requestFrame();
+	}
+
+	/**
+	 * Target is going away, rendering is stopped before return.
+	 * Squares, their flip state and a prepare in progress are kept for the next target.
+	 */
+	void onTargetDestroyed() {
+		renderLoop.quit();
+	}
+
+	/**
+	 * Host is attached to a window again, its scene is shown by the next target
+	 */
+	void onAttached() {
+		DetachedScenes.getInstance(host.getContext()).remove(this);
+	}
+
+	/**
+	 * Host is detached from its window. Squares, a prepare in progress and prefetched images are kept,
+	 * so a host attached again, e.g. scrolled back into a list, shows its squares right away.
+	 * They are released under memory pressure, see {@link DetachedScenes}.
+	 */
+	void onDetached() {
+		DetachedScenes.getInstance(host.getContext()).add(this);
+	}
+
+	/**
+	 * Free the scene: rendering is stopped, a prepare in progress is cancelled, prefetched images are dropped
+	 * and bitmaps of the squares are released. Upcoming images are kept, a new target prepares squares again.
+	 */
+	void release() {
+		DetachedScenes.getInstance(host.getContext()).remove(this);
+		RenderLoop loop = renderLoop;
+		if (loop != null) {
+			loop.quit();
+		}
+		nextGeneration();
+		futurePrepare = null;
+		prefetcher.pause();
+		PreparedSquares pending = preparedSquares.getAndSet(null);
+		if (pending != null) {
+			pending.grid.releaseBitmaps();
+		}
+		pendingFlip.set(false);
+		Session current = session;
+		if (current != null) {
+			current.renderer.release();
+		}
+		sceneWidth = EMPTY_VALUE;
+	}
+
+	/**
+	 * Visibility of the host window changed. Pending prepare of a visible host goes ahead of prepares for hidden views,
+	 * frames of a hidden host are skipped by the shared render thread.
+	 *
+	 * @param visibility window visibility
+	 */
+	void onWindowVisibilityChanged(int visibility) {
+		windowVisible = visibility == View.VISIBLE;
+		if (!windowVisible) {
+			return;
+		}
+		if (futurePrepare != null && !futurePrepare.isDone()) {
+			PrepareScheduler.getInstance().promote(futurePrepare);
+		}
+		requestFrame();
+	}
+
+	/**
+	 * Flip squares on the next frame. Flip state belongs to the draw thread,
+	 * so the flip is only requested here and starts at the time of the frame which picks it up.
+	 */
+	void flip() {
+		pendingFlip.set(true);
+		requestFrame();
+	}
+
+	private void requestFrame() {
+		RenderLoop loop = renderLoop;
+		if (loop != null) {
+			loop.requestFrame();
+		}
+	}
+
+	/**
+	 * Render on the thread shared by all views which use it instead of an own thread.
+	 * Takes effect when the render target is created next time.
+	 *
+	 * @param shared true - use the shared render thread
+	 */
+	void setSharedRenderThread(boolean shared) {
+		sharedRenderThread = shared;
+	}
+
+	/**
+	 * Set easing of the flip, applied to squares prepared from now on
+	 *
+	 * @param table sampled interpolator
+	 */
+	void setInterpolator(InterpolatorTable table) {
+		interpolator = table;
+		if (utils != null) {
+			utils.setInterpolator(table);
+		}
+	}
+
+	/**
+	 * Replace the animation clock, e.g. with a manual clock to step frames deterministically
+	 *
+	 * @param frameClock monotonic clock
+	 */
+	void setFrameClock(FrameClock frameClock) {
+		clock = frameClock;
+	}
+
+	/**
+	 * Start or stop recording frame timing. Metrics collected so far are kept while recording is stopped.
+	 */
+	void setMetricsEnabled(boolean enabled) {
+		if (enabled && metrics == null) {
+			metrics = new FrameMetrics();
+		}
+		Session current = session;
+		if (current != null) {
+			current.renderer.setMetrics(enabled ? metrics : null);
+		}
+		metricsEnabled = enabled;
+	}
+
+	@Nullable
+	FrameMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Frames of the current render target: picks up prepared squares, steps and draws them
+	 */
+	private class Session implements Renderable {
+		private final RenderTarget target;
+		private final SceneRenderer renderer;
+
+		private Session(RenderTarget target, SceneRenderer renderer) {
+			this.target = target;
+			this.renderer = renderer;
+			renderer.setMetrics(metricsEnabled ? metrics : null);
+		}
+
+		private void rotate(long now) {
+			SquareGrid squares = renderer.getGrid();
+			if (squares != null) {
+				squares.flip(now);
+			}
+		}
+
+		@Override
+		public boolean renderFrame() {
+			//Clock is sampled once, every square of the frame is stepped to the same time
+			long frameTime = clock.now();
+			PreparedSquares prepared = preparedSquares.getAndSet(null);
+			if (prepared != null && prepared.generation != prepareGeneration) {
+				prepared.grid.releaseBitmaps();
+			} else if (prepared != null) {
+				renderer.setGrid(prepared.grid);
+				if (prepared.flip) {
+					rotate(frameTime);
+				}
+				hideProgressBar();
+			}
+			if (pendingFlip.getAndSet(false)) {
+				rotate(frameTime);
+			}
+			return renderer.renderFrame(target, frameTime);
+		}
+
+		@Override
+		public boolean isShown() {
+			return windowVisible;
+		}
+
+		private SquareGrid.State currentState() {
+			SquareGrid squares = renderer.getGrid();
+			return squares != null ? squares.getCurrentState() : SquareGrid.State.FRONT;
+		}
+	}
+
+	void nextBitmap(int bitmapResourceId) {
+		SquareGrid.State currentState = session.currentState();
+		switch (currentState) {
+			case FRONT:
+				bitmapBack = bitmapResourceId;
+				utils.setBackBitmap(bitmapResourceId);
+				utils.setInitialState(SquareGrid.State.FRONT);
+				break;
+
+			case BACK:
+				bitmapFront = bitmapResourceId;
+				utils.setFrontBitmap(bitmapResourceId);
+				utils.setInitialState(SquareGrid.State.BACK);
+				break;
+		}
+		prefetcher.restore(bitmapResourceId);
+		showNext();
+		prefetcher.consumed(bitmapResourceId);
+	}
+
+	void nextBitmap(Bitmap bitmap) {
+		SquareGrid.State currentState = session.currentState();
+		switch (currentState) {
+			case FRONT:
+				utils.setBackBitmap(bitmap);
+				utils.setInitialState(SquareGrid.State.FRONT);
+				break;
+
+			case BACK:
+				utils.setFrontBitmap(bitmap);
+				utils.setInitialState(SquareGrid.State.BACK);
+				break;
+		}
+		showNext();
+	}
+
+	/**
+	 * Set images which will be shown next, they are decoded and scaled in background
+	 * while they fit into the prefetch budget
+	 *
+	 * @param ids image resource ids in the order they will be shown
+	 */
+	void setUpcoming(int... ids) {
+		prefetcher.setUpcoming(ids);
+	}
+
+	/**
+	 * Add image to the end of the upcoming queue
+	 *
+	 * @param id image resource id
+	 */
+	void enqueue(int id) {
+		prefetcher.enqueue(id);
+	}
+
+	/**
+	 * @param bytes how many bytes prefetched images may take, 0 - half of the {@link Cache} size
+	 */
+	void setPrefetchBudget(int bytes) {
+		prefetcher.setBudget(bytes);
+	}
+
+	/**
+	 * Flip to the new settings. If both images are already cached as whole bitmaps squares are sliced right away
+	 * and flip on the next frame, otherwise they are prepared in background ahead of offscreen views.
+	 */
+	private void showNext() {
+		SquareGrid grid = utils.prepareCached();
+		if (grid == null) {
+			requestPrepare(true);
+			showProgressBar();
+			return;
+		}
+		int generation = nextGeneration();
+		futurePrepare = null;
+		publish(generation, grid, true);
+	}
+
+	/**
+	 * Start preparing squares for current settings. Pending or running prepare is cancelled,
+	 * so only the newest request reaches the draw thread.
+	 * Prepared squares are handed to the draw thread as soon as they are ready and picked up on the next frame.
+	 *
+	 * @param flip true - flip prepared squares as soon as they are shown
+	 */
+	private void requestPrepare(final boolean flip) {
+		final int generation = nextGeneration();
+		futurePrepare = utils.prepareAsync(host.isShown(), flip, new PrepareUtils.PrepareListener() {
+			@Override
+			public void onPrepared(SquareGrid grid) {
+				if (generation != prepareGeneration) {
+					grid.releaseBitmaps();
+					return;
+				}
+				//Revealed squares flip by themselves as their tiles arrive
+				publish(generation, grid, flip && !grid.isRevealing());
+			}
+
+			@Override
+			public void onProgress() {
+				if (generation == prepareGeneration) {
+					requestFrame();
+				}
+			}
+
+			@Override
+			public void onFailed() {
+				//Newer request shows its own progress
+				if (generation == prepareGeneration) {
+					hideProgressBar();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Start a new prepare request, pending or running prepare is cancelled
+	 *
+	 * @return number of the new request
+	 */
+	private int nextGeneration() {
+		int generation = ++prepareGeneration;
+		Future<SquareGrid> previous = futurePrepare;
+		if (previous != null && !previous.isDone()) {
+			previous.cancel(true);
+		}
+		return generation;
+	}
+
+	private void publish(int generation, SquareGrid grid, boolean flip) {
+		PreparedSquares replaced = preparedSquares.getAndSet(new PreparedSquares(generation, grid, flip));
+		if (replaced != null) {
+			replaced.grid.releaseBitmaps();
+		}
+		requestFrame();
+	}
+
+	private void showProgressBar(){
+		if (showProgressBar && prepareCallback != null) {
+			prepareCallback.onPrepareStart();
+		}
+	}
+
+	private void hideProgressBar(){
+		if (showProgressBar && prepareCallback != null) {
+			prepareCallback.onPrepareFinish();
+		}
+	}
+
+	void clear(){
+		utils.setFrontBitmap(null);
+		utils.setBackBitmap(null);
+		showNext();
+	}
+
+	private static class PreparedSquares {
+		private final int generation;
+		private final SquareGrid grid;
+		private final boolean flip;
+
+		private PreparedSquares(int generation, SquareGrid grid, boolean flip) {
+			this.generation = generation;
+			this.grid = grid;
+			this.flip = flip;
+		}
+	}
+}
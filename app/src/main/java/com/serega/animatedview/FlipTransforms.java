@@ -0,0 +1,87 @@
+package com.serega.animatedview;
+
+import android.graphics.Camera;
+import android.graphics.Matrix;
+import android.util.SparseArray;
+
+/**
+ * Precomputed flip rotation matrices shared by all squares.
+ * Flip angle is rounded to the table step between -MAX_ANGLE_Y and MAX_ANGLE_Y,
+ * so one table holds every rotation a square can use.
+ * Matrices rotate around (0, 0), squares add translation to their own center.
+ */
+final class FlipTransforms {
+	private static final SparseArray<FlipTransforms> tables = new SparseArray<>();
+
+	/**
+	 * Used to build tables and for angles outside of the table, guarded by FlipTransforms.class
+	 */
+	private static final Camera camera = new Camera();
+
+	private final int step;
+	private final Matrix[] matrices;
+
+	private FlipTransforms(int step) {
+		this.step = step;
+		int count = (int) (2 * SquareGrid.MAX_ANGLE_Y / step) + 1;
+		matrices = new Matrix[count];
+		for (int i = 0; i < count; i++) {
+			Matrix m = new Matrix();
+			computeMatrix(i * step - SquareGrid.MAX_ANGLE_Y, m);
+			matrices[i] = m;
+		}
+	}
+
+	/**
+	 * Get table for the flip speed, table is built on the first call
+	 *
+	 * @param step animation step in degrees
+	 * @return shared table
+	 */
+	static synchronized FlipTransforms forStep(int step) {
+		FlipTransforms table = tables.get(step);
+		if (table == null) {
+			table = new FlipTransforms(step);
+			tables.put(step, table);
+		}
+		return table;
+	}
+
+	/**
+	 * @param angle flip angle
+	 * @return index of the angle in the table or -1 if the table has no such angle
+	 */
+	int indexOf(float angle) {
+		float position = (angle + SquareGrid.MAX_ANGLE_Y) / step;
+		int index = Math.round(position);
+		if (index < 0 || index >= matrices.length || position != index) {
+			return -1;
+		}
+		return index;
+	}
+
+	/**
+	 * Set rotation for the angle
+	 *
+	 * @param angle flip angle, rotates around Y and Z axes
+	 * @param out   matrix to set
+	 */
+	void getMatrix(float angle, Matrix out) {
+		int index = indexOf(angle);
+		if (index != -1) {
+			out.set(matrices[index]);
+		} else {
+			synchronized (FlipTransforms.class) {
+				computeMatrix(angle, out);
+			}
+		}
+	}
+
+	private static void computeMatrix(float angle, Matrix out) {
+		camera.save();
+		camera.rotateY(angle);
+		camera.rotateZ(angle);
+		camera.getMatrix(out);
+		camera.restore();
+	}
+}
@@ -0,0 +1,24 @@
+package com.serega.animatedview;
+
+import android.os.SystemClock;
+
+/**
+ * Source of the animation time. Sampled once per frame, so every square of the frame sees the same time.
+ * Replace with a manual clock to step the animation deterministically, see {@link AnimatedContainer#setFrameClock(FrameClock)}.
+ */
+public interface FrameClock {
+	/**
+	 * Monotonic uptime clock, not affected by changes of the wall clock
+	 */
+	FrameClock SYSTEM = new FrameClock() {
+		@Override
+		public long now() {
+			return SystemClock.uptimeMillis();
+		}
+	};
+
+	/**
+	 * @return current time in millis
+	 */
+	long now();
+}
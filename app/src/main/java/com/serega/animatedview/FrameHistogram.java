@@ -0,0 +1,65 @@
+package com.serega.animatedview;
+
+/**
+ * Histogram of durations with fixed linear buckets. Recording is one division and one increment, no allocations.
+ * Not thread safe, owner synchronizes access.
+ */
+final class FrameHistogram {
+	/**
+	 * Width of a bucket, 0.1 ms
+	 */
+	private static final long BUCKET_NANOS = 100000;
+
+	/**
+	 * Buckets cover 0 - 50 ms, slower frames are counted in the last bucket
+	 */
+	private static final int BUCKETS_COUNT = 500;
+
+	private final int[] counts = new int[BUCKETS_COUNT];
+	private int count;
+	private long maxNanos;
+
+	void record(long nanos) {
+		int bucket = (int) Math.min(Math.max(nanos, 0) / BUCKET_NANOS, BUCKETS_COUNT - 1);
+		counts[bucket]++;
+		count++;
+		if (nanos > maxNanos) {
+			maxNanos = nanos;
+		}
+	}
+
+	/**
+	 * @param fraction percentile as a fraction, e.g. 0.9 for 90th percentile
+	 * @return upper bound of the bucket holding the percentile, never above the max recorded value
+	 */
+	long percentile(float fraction) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS_COUNT; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min((i + 1) * BUCKET_NANOS, maxNanos);
+			}
+		}
+		return maxNanos;
+	}
+
+	int count() {
+		return count;
+	}
+
+	long max() {
+		return maxNanos;
+	}
+
+	void reset() {
+		for (int i = 0; i < BUCKETS_COUNT; i++) {
+			counts[i] = 0;
+		}
+		count = 0;
+		maxNanos = 0;
+	}
+}
@@ -0,0 +1,234 @@
+package com.serega.animatedview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+/**
+ * Frame timing of one AnimatedContainer: how long the render thread waited in lockCanvas,
+ * drew all squares and posted the frame in unlockCanvasAndPost.
+ * Recorded only while metrics are enabled, see {@link AnimatedContainer#setMetricsEnabled(boolean)}.
+ */
+public final class FrameMetrics {
+	/**
+	 * One frame at 60 fps
+	 */
+	public static final long DEFAULT_FRAME_BUDGET_NANOS = 16666667;
+
+	private static final float P50 = 0.5f;
+	private static final float P90 = 0.9f;
+	private static final float P99 = 0.99f;
+
+	public interface Listener {
+		/**
+		 * Called on the main thread every time all squares finish flipping
+		 *
+		 * @param report metrics collected since metrics were enabled or reset
+		 */
+		void onFrameMetrics(Report report);
+	}
+
+	private final FrameHistogram lockCanvas = new FrameHistogram();
+	private final FrameHistogram draw = new FrameHistogram();
+	private final FrameHistogram unlockCanvasAndPost = new FrameHistogram();
+	private final FrameHistogram total = new FrameHistogram();
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private long frameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
+	private int framesOverBudget;
+	private int animationsCompleted;
+	private volatile Listener listener;
+
+	FrameMetrics() {
+
+	}
+
+	public void setListener(@Nullable Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @param budgetNanos frames taking longer are counted as over budget, e.g. 1 / refresh rate of the display
+	 */
+	public synchronized void setFrameBudgetNanos(long budgetNanos) {
+		frameBudgetNanos = budgetNanos;
+	}
+
+	/**
+	 * Record one drawn frame, called on the render thread
+	 */
+	synchronized void recordFrame(long lockNanos, long drawNanos, long postNanos) {
+		lockCanvas.record(lockNanos);
+		draw.record(drawNanos);
+		unlockCanvasAndPost.record(postNanos);
+		long frameNanos = lockNanos + drawNanos + postNanos;
+		total.record(frameNanos);
+		if (frameNanos > frameBudgetNanos) {
+			framesOverBudget++;
+		}
+	}
+
+	/**
+	 * All squares finished flipping, report is sent to the listener. Called on the render thread.
+	 */
+	void onAnimationCompleted() {
+		final Report report;
+		synchronized (this) {
+			animationsCompleted++;
+			report = createReport();
+		}
+		final Listener current = listener;
+		if (current != null) {
+			handler.post(new Runnable() {
+				@Override
+				public void run() {
+					current.onFrameMetrics(report);
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return metrics collected so far
+	 */
+	public synchronized Report getReport() {
+		return createReport();
+	}
+
+	/**
+	 * Drop collected metrics
+	 */
+	public synchronized void reset() {
+		lockCanvas.reset();
+		draw.reset();
+		unlockCanvasAndPost.reset();
+		total.reset();
+		framesOverBudget = 0;
+		animationsCompleted = 0;
+	}
+
+	private Report createReport() {
+		return new Report(total.count(), framesOverBudget, animationsCompleted,
+				new Timing(lockCanvas), new Timing(draw), new Timing(unlockCanvasAndPost), new Timing(total));
+	}
+
+	/**
+	 * Immutable snapshot of the metrics
+	 */
+	public static final class Report {
+		private final int frames;
+		private final int framesOverBudget;
+		private final int animationsCompleted;
+		private final Timing lockCanvas;
+		private final Timing draw;
+		private final Timing unlockCanvasAndPost;
+		private final Timing total;
+
+		private Report(int frames, int framesOverBudget, int animationsCompleted,
+		               Timing lockCanvas, Timing draw, Timing unlockCanvasAndPost, Timing total) {
+			this.frames = frames;
+			this.framesOverBudget = framesOverBudget;
+			this.animationsCompleted = animationsCompleted;
+			this.lockCanvas = lockCanvas;
+			this.draw = draw;
+			this.unlockCanvasAndPost = unlockCanvasAndPost;
+			this.total = total;
+		}
+
+		/**
+		 * @return count of drawn frames
+		 */
+		public int getFrames() {
+			return frames;
+		}
+
+		/**
+		 * @return count of frames which took longer than the frame budget
+		 */
+		public int getFramesOverBudget() {
+			return framesOverBudget;
+		}
+
+		/**
+		 * @return count of flips after which all squares came to rest
+		 */
+		public int getAnimationsCompleted() {
+			return animationsCompleted;
+		}
+
+		/**
+		 * @return time spent waiting for a buffer in lockCanvas
+		 */
+		public Timing getLockCanvas() {
+			return lockCanvas;
+		}
+
+		/**
+		 * @return time spent drawing squares
+		 */
+		public Timing getDraw() {
+			return draw;
+		}
+
+		/**
+		 * @return time spent posting the frame in unlockCanvasAndPost
+		 */
+		public Timing getUnlockCanvasAndPost() {
+			return unlockCanvasAndPost;
+		}
+
+		/**
+		 * @return whole frame time: lock, draw and post
+		 */
+		public Timing getTotal() {
+			return total;
+		}
+
+		@Override
+		public String toString() {
+			return "frames=" + frames + " overBudget=" + framesOverBudget + " animations=" + animationsCompleted
+					+ " lockCanvas[" + lockCanvas + "] draw[" + draw + "] post[" + unlockCanvasAndPost + "] total[" + total + "]";
+		}
+	}
+
+	/**
+	 * Percentiles of one frame phase in millis, with 0.1 ms resolution
+	 */
+	public static final class Timing {
+		private final float p50;
+		private final float p90;
+		private final float p99;
+		private final float max;
+
+		private Timing(FrameHistogram histogram) {
+			p50 = toMillis(histogram.percentile(P50));
+			p90 = toMillis(histogram.percentile(P90));
+			p99 = toMillis(histogram.percentile(P99));
+			max = toMillis(histogram.max());
+		}
+
+		private static float toMillis(long nanos) {
+			return nanos / 1000000f;
+		}
+
+		public float getP50Millis() {
+			return p50;
+		}
+
+		public float getP90Millis() {
+			return p90;
+		}
+
+		public float getP99Millis() {
+			return p99;
+		}
+
+		public float getMaxMillis() {
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return "p50=" + p50 + " p90=" + p90 + " p99=" + p99 + " max=" + max;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.serega.animatedview;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+
+/**
+ * Sizes in-memory budgets from the heap limit of the app
+ */
+final class MemoryClass {
+	private MemoryClass() {
+	}
+
+	/**
+	 * @param context any context
+	 * @param part    budget is 1 / part of the heap limit, the large heap limit if the app requests it
+	 * @return budget in bytes
+	 */
+	static int part(Context context, int part) {
+		ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+		boolean largeHeap = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_LARGE_HEAP) != 0;
+		int memoryClass = largeHeap ? am.getLargeMemoryClass() : am.getMemoryClass();
+		return memoryClass * 1024 * 1024 / part;
+	}
+}
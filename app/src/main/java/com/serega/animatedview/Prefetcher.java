@@ -0,0 +1,234 @@
+package com.serega.animatedview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes and scales images the app is going to show next, so {@link FlipController#nextBitmap(int)}
+ * finds them in {@link Cache} and only has to slice them.
+ * <p>
+ * Loaded bitmaps are pinned with a {@link BitmapPool} reference until they are shown or dropped from the queue,
+ * so the cache can't evict them in between. Loads and pins together stay within the budget.
+ * Nothing is loaded while squares are decoded by tiles, see {@link PrepareUtils#canPrefetch()}.
+ */
+final class Prefetcher {
+	/**
+	 * Default budget is 1 / CACHE_PART of the cache size
+	 */
+	private static final int CACHE_PART = 2;
+
+	private final Context context;
+
+	/**
+	 * Images waiting to be loaded, in the order they will be shown
+	 */
+	private final ArrayDeque<Integer> upcoming = new ArrayDeque<>();
+	private final Map<Integer, Load> loading = new HashMap<>();
+
+	/**
+	 * Loaded bitmaps, each holds a pool reference
+	 */
+	private final Map<Integer, Bitmap> ready = new HashMap<>();
+
+	private PrepareUtils settings;
+	private int budget;
+	private long usedBytes;
+
+	/**
+	 * @param context any context
+	 */
+	Prefetcher(Context context) {
+		this.context = context;
+	}
+
+	/**
+	 * Set how many bytes loaded and loading images may take
+	 *
+	 * @param bytes budget in bytes, 0 - half of the {@link Cache} size
+	 */
+	synchronized void setBudget(int bytes) {
+		budget = bytes;
+		schedule();
+	}
+
+	/**
+	 * Use settings of the scene. Images loaded for other settings are dropped and loaded again.
+	 *
+	 * @param utils settings of the scene, copied for every load
+	 */
+	synchronized void setSettings(PrepareUtils utils) {
+		dropLoaded();
+		settings = utils;
+		schedule();
+	}
+
+	/**
+	 * Drop loaded images and stop loading until settings are set again. The queue is kept.
+	 */
+	synchronized void pause() {
+		dropLoaded();
+		settings = null;
+	}
+
+	/**
+	 * Cancel loads and release loaded images, their ids return to the head of the queue
+	 */
+	private void dropLoaded() {
+		for (Map.Entry<Integer, Load> entry : loading.entrySet()) {
+			entry.getValue().cancel();
+			upcoming.addFirst(entry.getKey());
+		}
+		loading.clear();
+		for (Map.Entry<Integer, Bitmap> entry : ready.entrySet()) {
+			BitmapPool.getInstance(context).release(entry.getValue());
+			upcoming.addFirst(entry.getKey());
+		}
+		ready.clear();
+		usedBytes = 0;
+	}
+
+	/**
+	 * Replace the queue. Images not in the new queue are dropped.
+	 *
+	 * @param ids image resource ids in the order they will be shown
+	 */
+	synchronized void setUpcoming(int... ids) {
+		upcoming.clear();
+		Set<Integer> keep = new HashSet<>();
+		for (int id : ids) {
+			keep.add(id);
+			upcoming.add(id);
+		}
+
+		Iterator<Map.Entry<Integer, Load>> loads = loading.entrySet().iterator();
+		while (loads.hasNext()) {
+			Map.Entry<Integer, Load> entry = loads.next();
+			if (!keep.contains(entry.getKey())) {
+				entry.getValue().cancel();
+				usedBytes -= entry.getValue().estimate;
+				loads.remove();
+			}
+		}
+		Iterator<Map.Entry<Integer, Bitmap>> pins = ready.entrySet().iterator();
+		while (pins.hasNext()) {
+			Map.Entry<Integer, Bitmap> entry = pins.next();
+			if (!keep.contains(entry.getKey())) {
+				usedBytes -= entry.getValue().getByteCount();
+				BitmapPool.getInstance(context).release(entry.getValue());
+				pins.remove();
+			}
+		}
+		schedule();
+	}
+
+	/**
+	 * Add image to the end of the queue
+	 *
+	 * @param id image resource id
+	 */
+	synchronized void enqueue(int id) {
+		upcoming.add(id);
+		schedule();
+	}
+
+	/**
+	 * Image is about to be shown, put its loaded bitmap back to the cache in case the cache evicted it meanwhile
+	 *
+	 * @param id image resource id
+	 */
+	synchronized void restore(int id) {
+		Bitmap bitmap = ready.get(id);
+		if (bitmap == null) {
+			return;
+		}
+		Cache cache = Cache.getInstance(context);
+		CacheKey key = settings.resourceKey(id);
+		if (cache.get(key) != bitmap) {
+			cache.put(key, bitmap);
+		}
+	}
+
+	/**
+	 * Image is shown, its squares hold own references, so the pin is released and the next image can be loaded
+	 *
+	 * @param id image resource id
+	 */
+	synchronized void consumed(int id) {
+		upcoming.remove(id);
+		Bitmap bitmap = ready.remove(id);
+		if (bitmap != null) {
+			usedBytes -= bitmap.getByteCount();
+			BitmapPool.getInstance(context).release(bitmap);
+		}
+		schedule();
+	}
+
+	private long budget() {
+		return budget > 0 ? budget : Cache.getInstance(context).maxSize() / CACHE_PART;
+	}
+
+	/**
+	 * Start loading queued images while they fit into the budget
+	 */
+	private void schedule() {
+		if (settings == null || !settings.canPrefetch()) {
+			return;
+		}
+		long estimate = settings.scaledByteCount();
+		while (!upcoming.isEmpty() && usedBytes + estimate <= budget()) {
+			final int id = upcoming.poll();
+			if (loading.containsKey(id) || ready.containsKey(id)) {
+				continue;
+			}
+			final Load load = new Load(estimate);
+			loading.put(id, load);
+			usedBytes += estimate;
+			//Listener waits for the lock, so the future is set before the result is handled
+			load.future = settings.loadAsync(id, new PrepareUtils.LoadListener() {
+				@Override
+				public void onLoaded(@Nullable Bitmap bitmap) {
+					Prefetcher.this.onLoaded(id, load, bitmap);
+				}
+			});
+		}
+	}
+
+	private synchronized void onLoaded(int id, Load load, @Nullable Bitmap bitmap) {
+		if (loading.get(id) != load) {
+			//Dropped while loading
+			BitmapPool.getInstance(context).release(bitmap);
+			return;
+		}
+		loading.remove(id);
+		usedBytes -= load.estimate;
+		if (bitmap != null) {
+			ready.put(id, bitmap);
+			usedBytes += bitmap.getByteCount();
+		}
+		schedule();
+	}
+
+	private static class Load {
+		private final long estimate;
+		private Future<?> future;
+
+		private Load(long estimate) {
+			this.estimate = estimate;
+		}
+
+		private void cancel() {
+			if (future != null) {
+				future.cancel(true);
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.serega.animatedview;
+
+/**
+ * Timing and counters of one prepare: decoding, scaling, slicing into squares and cache lookups
+ */
+public final class PrepareEvent {
+	private final boolean completed;
+	private final long totalNanos;
+	private final long decodeNanos;
+	private final long scaleNanos;
+	private final long sliceNanos;
+	private final int cacheHits;
+	private final int cacheMisses;
+	private final long bytesAllocated;
+
+	PrepareEvent(boolean completed, long totalNanos, long decodeNanos, long scaleNanos, long sliceNanos,
+	             int cacheHits, int cacheMisses, long bytesAllocated) {
+		this.completed = completed;
+		this.totalNanos = totalNanos;
+		this.decodeNanos = decodeNanos;
+		this.scaleNanos = scaleNanos;
+		this.sliceNanos = sliceNanos;
+		this.cacheHits = cacheHits;
+		this.cacheMisses = cacheMisses;
+		this.bytesAllocated = bytesAllocated;
+	}
+
+	/**
+	 * @return false if the prepare was cancelled by a newer request or failed
+	 */
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	/**
+	 * @return whole prepare time
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return time spent reading and decoding resources
+	 */
+	public long getDecodeNanos() {
+		return decodeNanos;
+	}
+
+	/**
+	 * @return time spent scaling bitmaps to the view size
+	 */
+	public long getScaleNanos() {
+		return scaleNanos;
+	}
+
+	/**
+	 * @return time spent building squares
+	 */
+	public long getSliceNanos() {
+		return sliceNanos;
+	}
+
+	/**
+	 * @return bitmaps found in {@link Cache} at the exact size
+	 */
+	public int getCacheHits() {
+		return cacheHits;
+	}
+
+	/**
+	 * @return bitmaps which had to be decoded or scaled
+	 */
+	public int getCacheMisses() {
+		return cacheMisses;
+	}
+
+	/**
+	 * @return bytes of new bitmaps, bitmaps reused from {@link BitmapPool} are not counted
+	 */
+	public long getBytesAllocated() {
+		return bytesAllocated;
+	}
+
+	@Override
+	public String toString() {
+		return (completed ? "completed" : "cancelled") + " total=" + totalNanos / 1000 + "us decode=" + decodeNanos / 1000
+				+ "us scale=" + scaleNanos / 1000 + "us slice=" + sliceNanos / 1000 + "us hits=" + cacheHits
+				+ " misses=" + cacheMisses + " allocated=" + bytesAllocated;
+	}
+}
@@ -0,0 +1,204 @@
+package com.serega.animatedview;
+
+import android.os.Process;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide executor used by all AnimatedViews to prepare squares.
+ * Pool size is bounded by the number of cores, workers run with background priority,
+ * tasks of visible views are taken from the queue first and run with default priority.
+ */
+public class PrepareScheduler {
+	private static final long KEEP_ALIVE_SECONDS = 30;
+	private static PrepareScheduler instance;
+
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong sequence = new AtomicLong();
+
+	private PrepareScheduler() {
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+		executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(), new PrepareThreadFactory());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static synchronized PrepareScheduler getInstance() {
+		if (instance == null) {
+			instance = new PrepareScheduler();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Stop all workers and drop queued tasks. Next {@link #getInstance()} call creates a new scheduler.
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			instance.executor.shutdownNow();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Submit prepare task
+	 *
+	 * @param task    task to run
+	 * @param visible true if the task belongs to a visible view, such tasks run first
+	 * @return future with task result
+	 */
+	<T> Future<T> submit(Callable<T> task, boolean visible) {
+		PrioritizedTask<T> future = new PrioritizedTask<>(task, visible, sequence.getAndIncrement());
+		executor.execute(future);
+		return future;
+	}
+
+	/**
+	 * Run tasks in parallel on free workers and on the calling thread. Tasks no worker has taken yet
+	 * are run by the calling thread itself, so it never waits for queued work and can be called from a prepare task.
+	 * If a task fails or the calling thread is interrupted, tasks which didn't finish yet are cancelled.
+	 * Tasks already running on workers may still be finishing when this method throws.
+	 *
+	 * @param tasks   tasks to run
+	 * @param visible true if the tasks belong to a visible view
+	 * @throws IOException if some task failed with it
+	 */
+	void invokeAll(List<? extends Callable<?>> tasks, boolean visible) throws IOException {
+		List<PrioritizedTask<?>> futures = new ArrayList<>(tasks.size());
+		try {
+			for (int i = 1; i < tasks.size(); i++) {
+				PrioritizedTask<?> future = new PrioritizedTask<>(tasks.get(i), visible, sequence.getAndIncrement());
+				futures.add(future);
+				executor.execute(future);
+			}
+			if (!tasks.isEmpty()) {
+				tasks.get(0).call();
+			}
+			for (PrioritizedTask<?> future : futures) {
+				if (executor.remove(future)) {
+					future.run();
+				}
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Prepare superseded by a newer request");
+		} catch (ExecutionException e) {
+			throw rethrow(e.getCause());
+		} catch (Exception e) {
+			throw rethrow(e);
+		} finally {
+			for (PrioritizedTask<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private static IOException rethrow(Throwable t) {
+		if (t instanceof IOException) {
+			return (IOException) t;
+		}
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		throw new RuntimeException(t);
+	}
+
+	/**
+	 * Move still queued task ahead of tasks of invisible views
+	 *
+	 * @param future future returned by {@link #submit(Callable, boolean)}
+	 */
+	void promote(Future<?> future) {
+		if (!(future instanceof PrioritizedTask)) {
+			return;
+		}
+		PrioritizedTask<?> task = (PrioritizedTask<?>) future;
+		if (!task.visible && executor.remove(task)) {
+			task.visible = true;
+			executor.execute(task);
+		}
+	}
+
+	/**
+	 * @return count of tasks waiting for a free worker
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return approximate count of tasks running right now
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	private static class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask<?>> {
+		private volatile boolean visible;
+		private final long order;
+
+		PrioritizedTask(Callable<T> callable, boolean visible, long order) {
+			super(callable);
+			this.visible = visible;
+			this.order = order;
+		}
+
+		@Override
+		public void run() {
+			boolean boosted = visible;
+			//Task may also run on a thread which waits for it, its priority is restored afterwards
+			int priority = Process.getThreadPriority(Process.myTid());
+			if (boosted) {
+				Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
+			}
+			try {
+				super.run();
+			} finally {
+				if (boosted) {
+					Process.setThreadPriority(priority);
+				}
+			}
+		}
+
+		@Override
+		public int compareTo(PrioritizedTask<?> another) {
+			if (visible != another.visible) {
+				return visible ? -1 : 1;
+			}
+			return order < another.order ? -1 : (order == another.order ? 0 : 1);
+		}
+	}
+
+	private static class PrepareThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					r.run();
+				}
+			}, "AnimatedView prepare #" + count.incrementAndGet());
+		}
+	}
+}
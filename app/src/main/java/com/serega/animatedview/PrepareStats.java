@@ -0,0 +1,185 @@
+package com.serega.animatedview;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process wide statistics of prepares of all AnimatedViews.
+ * Every prepare is reported to listeners as a {@link PrepareEvent} and added to the totals.
+ */
+public class PrepareStats {
+	private static PrepareStats instance;
+
+	private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+	private int prepares;
+	private int cancelled;
+	private long totalNanos;
+	private long maxTotalNanos;
+	private long decodeNanos;
+	private long scaleNanos;
+	private long sliceNanos;
+	private int cacheHits;
+	private int cacheMisses;
+	private long bytesAllocated;
+
+	public interface Listener {
+		/**
+		 * Called on the prepare thread, should return quickly
+		 *
+		 * @param event finished prepare
+		 */
+		void onPrepare(PrepareEvent event);
+	}
+
+	private PrepareStats() {
+
+	}
+
+	public static synchronized PrepareStats getInstance() {
+		if (instance == null) {
+			instance = new PrepareStats();
+		}
+
+		return instance;
+	}
+
+	public void addListener(Listener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	void record(PrepareEvent event) {
+		synchronized (this) {
+			prepares++;
+			if (!event.isCompleted()) {
+				cancelled++;
+			}
+			totalNanos += event.getTotalNanos();
+			maxTotalNanos = Math.max(maxTotalNanos, event.getTotalNanos());
+			decodeNanos += event.getDecodeNanos();
+			scaleNanos += event.getScaleNanos();
+			sliceNanos += event.getSliceNanos();
+			cacheHits += event.getCacheHits();
+			cacheMisses += event.getCacheMisses();
+			bytesAllocated += event.getBytesAllocated();
+		}
+		for (Listener listener : listeners) {
+			listener.onPrepare(event);
+		}
+	}
+
+	/**
+	 * @return totals since process start or the last {@link #reset()}
+	 */
+	public synchronized Snapshot getSnapshot() {
+		return new Snapshot(this);
+	}
+
+	public synchronized void reset() {
+		prepares = 0;
+		cancelled = 0;
+		totalNanos = 0;
+		maxTotalNanos = 0;
+		decodeNanos = 0;
+		scaleNanos = 0;
+		sliceNanos = 0;
+		cacheHits = 0;
+		cacheMisses = 0;
+		bytesAllocated = 0;
+	}
+
+	/**
+	 * Immutable totals of all prepares
+	 */
+	public static final class Snapshot {
+		private final int prepares;
+		private final int cancelled;
+		private final long totalNanos;
+		private final long maxTotalNanos;
+		private final long decodeNanos;
+		private final long scaleNanos;
+		private final long sliceNanos;
+		private final int cacheHits;
+		private final int cacheMisses;
+		private final long bytesAllocated;
+
+		private Snapshot(PrepareStats stats) {
+			prepares = stats.prepares;
+			cancelled = stats.cancelled;
+			totalNanos = stats.totalNanos;
+			maxTotalNanos = stats.maxTotalNanos;
+			decodeNanos = stats.decodeNanos;
+			scaleNanos = stats.scaleNanos;
+			sliceNanos = stats.sliceNanos;
+			cacheHits = stats.cacheHits;
+			cacheMisses = stats.cacheMisses;
+			bytesAllocated = stats.bytesAllocated;
+		}
+
+		/**
+		 * @return count of prepares, including cancelled
+		 */
+		public int getPrepares() {
+			return prepares;
+		}
+
+		/**
+		 * @return count of prepares cancelled by newer requests or failed
+		 */
+		public int getCancelled() {
+			return cancelled;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		/**
+		 * @return longest prepare
+		 */
+		public long getMaxTotalNanos() {
+			return maxTotalNanos;
+		}
+
+		public long getDecodeNanos() {
+			return decodeNanos;
+		}
+
+		public long getScaleNanos() {
+			return scaleNanos;
+		}
+
+		public long getSliceNanos() {
+			return sliceNanos;
+		}
+
+		public int getCacheHits() {
+			return cacheHits;
+		}
+
+		public int getCacheMisses() {
+			return cacheMisses;
+		}
+
+		public long getBytesAllocated() {
+			return bytesAllocated;
+		}
+
+		/**
+		 * @return average prepare time or 0 if nothing was prepared
+		 */
+		public long getAverageNanos() {
+			return prepares > 0 ? totalNanos / prepares : 0;
+		}
+
+		@Override
+		public String toString() {
+			return "prepares=" + prepares + " cancelled=" + cancelled + " avg=" + getAverageNanos() / 1000
+					+ "us max=" + maxTotalNanos / 1000 + "us decode=" + decodeNanos / 1000 + "us scale=" + scaleNanos / 1000
+					+ "us slice=" + sliceNanos / 1000 + "us hits=" + cacheHits + " misses=" + cacheMisses
+					+ " allocated=" + bytesAllocated;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.serega.animatedview;
+
+/**
+ * Timing and counters of one prepare, filled on prepare threads as stages run.
+ * Stages of one prepare may run in parallel, their times are summed.
+ */
+final class PrepareTrace {
+	private final long startNanos = System.nanoTime();
+	private long decodeNanos;
+	private long scaleNanos;
+	private long sliceNanos;
+	private int cacheHits;
+	private int cacheMisses;
+	private long bytesAllocated;
+
+	synchronized void addDecode(long nanos) {
+		decodeNanos += nanos;
+	}
+
+	synchronized void addScale(long nanos) {
+		scaleNanos += nanos;
+	}
+
+	synchronized void addSlice(long nanos) {
+		sliceNanos += nanos;
+	}
+
+	synchronized void onCacheHit() {
+		cacheHits++;
+	}
+
+	synchronized void onCacheMiss() {
+		cacheMisses++;
+	}
+
+	/**
+	 * New bitmap memory was allocated, instead of reusing a pooled bitmap
+	 *
+	 * @param bytes allocated bytes
+	 */
+	synchronized void onAllocated(long bytes) {
+		bytesAllocated += bytes;
+	}
+
+	/**
+	 * @param completed false if the prepare was cancelled or failed
+	 * @return event describing the prepare
+	 */
+	synchronized PrepareEvent finish(boolean completed) {
+		return new PrepareEvent(completed, System.nanoTime() - startNanos, decodeNanos, scaleNanos, sliceNanos,
+				cacheHits, cacheMisses, bytesAllocated);
+	}
+}
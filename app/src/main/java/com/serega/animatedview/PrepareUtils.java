@@ -2,19 +2,25 @@ package com.serega.animatedview;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.support.annotation.Nullable;
 import android.util.TypedValue;
 
+import com.serega.animatedview.core.GridLayout;
+import com.serega.animatedview.core.InterpolatorTable;
+
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Future;
 
 class PrepareUtils {
 	private static final int EMPTY_VALUE = -1;
+
+	/**
+	 * Config of scaled bitmaps, images supplied by the app in other configs are converted
+	 */
+	private static final Bitmap.Config BITMAP_CONFIG = Bitmap.Config.ARGB_8888;
+
 	/**
 	 * AnimatedView width
 	 */
@@ -61,19 +67,105 @@ class PrepareUtils {
 	 * Max delay before flip animation started
 	 */
 	private long maxDelayValue = EMPTY_VALUE;
-	private Square.State initialState = Square.State.FRONT;
+	private SquareGrid.State initialState = SquareGrid.State.FRONT;
 
 	/**
 	 * Should we use rotate animation?
 	 */
 	private boolean animateChanges = true;
 
+	/**
+	 * How squares are drawn, see {@link SquareGrid#RENDER_MODE_SQUARES} and {@link SquareGrid#RENDER_MODE_MESH}
+	 */
+	private int renderMode = SquareGrid.RENDER_MODE_SQUARES;
+
+	/**
+	 * Easing of the flip
+	 */
+	private InterpolatorTable interpolator = InterpolatorTable.LINEAR;
+
+	/**
+	 * How images are fitted to the view, see {@link BitmapDecoder#SCALE_MODE_FIT_XY}
+	 */
+	private int scaleMode = BitmapDecoder.SCALE_MODE_FIT_XY;
+
+	/**
+	 * Should resource images be decoded tile by tile, straight into regions of squares?
+	 */
+	private boolean tiledDecoding;
+
+	/**
+	 * Should squares flip to a new image one by one as soon as their tiles are decoded?
+	 */
+	private boolean progressiveReveal;
+
+	/**
+	 * Should scaled resource images be stored in {@link DiskCache}?
+	 */
+	private boolean diskCache;
+
 	private final Context context;
 
+	interface PrepareListener {
+		/**
+		 * Called on the prepare thread as soon as squares are ready
+		 *
+		 * @param grid prepared squares
+		 */
+		void onPrepared(SquareGrid grid);
+
+		/**
+		 * Called on a prepare thread when one more tile of squares revealed tile by tile is ready
+		 */
+		void onProgress();
+
+		/**
+		 * Called on the prepare thread if prepare failed or was cancelled while running,
+		 * {@link #onPrepared(SquareGrid)} may not be called then
+		 */
+		void onFailed();
+	}
+
+	interface LoadListener {
+		/**
+		 * Called on the prepare thread when the bitmap is loaded, also if loading failed
+		 *
+		 * @param bitmap scaled and cached bitmap with a {@link BitmapPool} reference owned by the listener,
+		 *               or null if loading failed
+		 */
+		void onLoaded(@Nullable Bitmap bitmap);
+	}
+
 	PrepareUtils(Context context) {
 		this.context = context;
 	}
 
+	/**
+	 * Copy settings, so the copy can be prepared while the original is changed by the next request
+	 *
+	 * @param source settings to copy
+	 */
+	private PrepareUtils(PrepareUtils source) {
+		context = source.context;
+		width = source.width;
+		bitmapFrontId = source.bitmapFrontId;
+		bitmapBackId = source.bitmapBackId;
+		bitmapFront = source.bitmapFront;
+		bitmapBack = source.bitmapBack;
+		squaresHorizontal = source.squaresHorizontal;
+		marginBetween = source.marginBetween;
+		flipSpeed = source.flipSpeed;
+		maxDelayValue = source.maxDelayValue;
+		initialState = source.initialState;
+		animateChanges = source.animateChanges;
+		scaleMode = source.scaleMode;
+		tiledDecoding = source.tiledDecoding;
+		progressiveReveal = source.progressiveReveal;
+		diskCache = source.diskCache;
+		renderMode = source.renderMode;
+		interpolator = source.interpolator;
+	}
+
 	/**
 	 * Set AnimatedView width
 	 *
@@ -175,11 +267,80 @@ class PrepareUtils {
 		return this;
 	}
 
-	PrepareUtils setInitialState(Square.State state) {
+	PrepareUtils setInitialState(SquareGrid.State state) {
 		initialState = state;
 		return this;
 	}
 
+	/**
+	 * Set how squares are drawn
+	 *
+	 * @param mode render mode, see values in attrs
+	 * @return reference to self
+	 */
+	PrepareUtils setRenderMode(int mode) {
+		renderMode = mode;
+		return this;
+	}
+
+	/**
+	 * Set easing of the flip
+	 *
+	 * @param table sampled interpolator
+	 * @return reference to self
+	 */
+	PrepareUtils setInterpolator(InterpolatorTable table) {
+		interpolator = table;
+		return this;
+	}
+
+	/**
+	 * Set how images are fitted to the view
+	 *
+	 * @param mode scale mode, see values in attrs
+	 * @return reference to self
+	 */
+	PrepareUtils setScaleMode(int mode) {
+		scaleMode = mode;
+		return this;
+	}
+
+	/**
+	 * Decode resource images tile by tile: every square gets its own bitmap decoded straight from its region
+	 * of the source, in parallel. The whole scaled image is never held in memory, useful for very large images.
+	 *
+	 * @param tiled true - decode by tiles, false - decode whole images (default)
+	 * @return reference to self
+	 */
+	PrepareUtils setTiledDecoding(boolean tiled) {
+		tiledDecoding = tiled;
+		return this;
+	}
+
+	/**
+	 * Show squares as soon as the image on screen is ready and flip every square to the new resource image
+	 * as soon as its tile is decoded, instead of waiting for the whole image. Implies tiled decoding.
+	 *
+	 * @param progressive true - reveal new images tile by tile, false - flip all squares when all are ready (default)
+	 * @return reference to self
+	 */
+	PrepareUtils setProgressiveReveal(boolean progressive) {
+		progressiveReveal = progressive;
+		return this;
+	}
+
+	/**
+	 * Store scaled resource images in {@link DiskCache} and read them back instead of decoding,
+	 * also after the process restarts
+	 *
+	 * @param enabled true - use disk cache, false - memory cache only (default)
+	 * @return reference to self
+	 */
+	PrepareUtils useDiskCache(boolean enabled) {
+		diskCache = enabled;
+		return this;
+	}
+
 	/**
 	 * Is rotate animation required?
 	 *
@@ -194,68 +355,345 @@ class PrepareUtils {
 	/**
 	 * Prepare Squares (dividing bitmaps, set initial values). Take some time, should run outside main thread.
 	 *
-	 * @return collection of Squares to use
+	 * @return grid of Squares to use
 	 * @throws IOException if the image format is not supported or can not be decoded.
 	 */
-	Collection<Square> prepare() throws IOException {
+	SquareGrid prepare() throws IOException {
+		PrepareTrace trace = new PrepareTrace();
+		boolean completed = false;
+		try {
+			SquareGrid grid = prepare(trace);
+			completed = true;
+			return grid;
+		} finally {
+			PrepareStats.getInstance().record(trace.finish(completed));
+		}
+	}
+
+	private SquareGrid prepare(PrepareTrace trace) throws IOException {
 		checkWidth();
-		int colorFront = 0;
-		int colorBack = 0;
+		GridLayout layout = new GridLayout(width, squaresHorizontal, marginBetween);
+		BitmapPool pool = BitmapPool.getInstance(context);
+		Face front = new Face();
+		Face back = new Face();
+		try {
+			loadFace(front, bitmapFrontId, bitmapFront, layout, trace);
+			checkCancelled();
+			loadFace(back, bitmapBackId, bitmapBack, layout, trace);
+			checkCancelled();
+			return createGrid(layout, front, back, trace);
+		} finally {
+			//Grid holds its own references now
+			front.release(pool);
+			back.release(pool);
+		}
+	}
 
-		int squaresAreaDimen = (width - marginBetween) / squaresHorizontal;
-		int imax = squaresHorizontal * squaresHorizontal;
-		Collection<Square> squareList = new ArrayList<>(imax);
+	/**
+	 * Prepare Squares right away if both images are already scaled and cached as whole bitmaps.
+	 * Nothing is decoded or scaled, so it is cheap enough for the main thread.
+	 * Squares with own tiles take a cache lookup per square, they are always prepared in background.
+	 *
+	 * @return grid of Squares to use or null if some image is not cached yet or squares use tiles
+	 */
+	@Nullable
+	SquareGrid prepareCached() {
+		checkWidth();
+		if (usesTiles()) {
+			return null;
+		}
+		GridLayout layout = new GridLayout(width, squaresHorizontal, marginBetween);
+		BitmapPool pool = BitmapPool.getInstance(context);
+		PrepareTrace trace = new PrepareTrace();
+		Face front = new Face();
+		Face back = new Face();
+		try {
+			if (!loadCachedFace(front, bitmapFrontId, bitmapFront, trace)
+					|| !loadCachedFace(back, bitmapBackId, bitmapBack, trace)) {
+				return null;
+			}
+			SquareGrid grid = createGrid(layout, front, back, trace);
+			PrepareStats.getInstance().record(trace.finish(true));
+			return grid;
+		} finally {
+			front.release(pool);
+			back.release(pool);
+		}
+	}
 
-		Bitmap frontBitmap = getBitmap(bitmapFrontId, bitmapFront);
-		if (frontBitmap == null) {
-			colorFront = context.getResources().getColor(android.R.color.holo_red_dark);
-		} else {
-			int frontKey = (bitmapFront != null) ? bitmapFront.hashCode() : bitmapFrontId;
-			Cache.getInstance().put(frontKey, frontBitmap);
+	/**
+	 * Prepare Squares showing the current image right away, the new image is revealed tile by tile.
+	 * Squares are handed to the listener before tiles of the new image are decoded.
+	 *
+	 * @return grid of Squares to use
+	 */
+	private SquareGrid prepareRevealing(PrepareListener listener) throws IOException {
+		PrepareTrace trace = new PrepareTrace();
+		boolean completed = false;
+		try {
+			SquareGrid grid = prepareRevealing(trace, listener);
+			completed = true;
+			return grid;
+		} finally {
+			PrepareStats.getInstance().record(trace.finish(completed));
 		}
+	}
+
+	private SquareGrid prepareRevealing(PrepareTrace trace, final PrepareListener listener) throws IOException {
+		checkWidth();
+		GridLayout layout = new GridLayout(width, squaresHorizontal, marginBetween);
+		BitmapPool pool = BitmapPool.getInstance(context);
+		boolean revealBack = initialState == SquareGrid.State.FRONT;
+		Face shown = new Face();
+		Bitmap[] tiles = null;
+		Bitmap whole = null;
+		SquareGrid revealing = null;
+		try {
+			if (revealBack) {
+				loadFace(shown, bitmapFrontId, bitmapFront, layout, trace);
+			} else {
+				loadFace(shown, bitmapBackId, bitmapBack, layout, trace);
+			}
+			checkCancelled();
+			final SquareGrid grid = revealBack ? createGrid(layout, shown, new Face(), trace)
+					: createGrid(layout, new Face(), shown, trace);
+			grid.startReveal();
+			revealing = grid;
+			listener.onPrepared(grid);
+
+			int revealedId = revealBack ? bitmapBackId : bitmapFrontId;
+			tiles = getTiles(revealedId, layout, trace, new BitmapDecoder.TileListener() {
+				@Override
+				public void onTileDecoded(int index, Bitmap tile) {
+					grid.onTileReady(index, tile);
+					listener.onProgress();
+				}
+			});
+			if (tiles == null) {
+				whole = getBitmap(revealedId, null, trace);
+				if (whole == null) {
+					throw new IOException("Can't decode resource " + revealedId);
+				}
+				grid.onFaceReady(whole);
+				listener.onProgress();
+			}
+			revealing = null;
+			return grid;
+		} finally {
+			if (revealing != null) {
+				//Squares waiting for tiles stop waiting, the frame picking that up is requested like for a tile
+				revealing.onRevealFailed();
+				listener.onProgress();
+			}
+			shown.release(pool);
+			releaseTiles(tiles);
+			pool.release(whole);
+		}
+	}
+
+	/**
+	 * @return true if the image a prepare flips to can be revealed tile by tile
+	 */
+	private boolean canReveal() {
+		int revealedId = initialState == SquareGrid.State.FRONT ? bitmapBackId : bitmapFrontId;
+		return progressiveReveal && revealedId != EMPTY_VALUE;
+	}
+
+	/**
+	 * @return true if images can be loaded ahead by {@link #loadAsync(int, LoadListener)}.
+	 * Tiles of an image are cached one by one and can't be pinned as one bitmap, so tiled images are not loaded ahead.
+	 */
+	boolean canPrefetch() {
+		return !usesTiles();
+	}
+
+	private boolean usesTiles() {
+		return tiledDecoding || progressiveReveal;
+	}
+
+	private void loadFace(Face face, int bitmapId, Bitmap bitmap, GridLayout layout, PrepareTrace trace) throws IOException {
+		if (usesTiles()) {
+			face.tiles = getTiles(bitmapId, layout, trace, null);
+		}
+		if (face.tiles == null) {
+			face.bitmap = getBitmap(bitmapId, bitmap, trace);
+		}
+	}
 
-		Bitmap backBitmap = getBitmap(bitmapBackId, bitmapBack);
-		if (backBitmap == null) {
-			colorBack = context.getResources().getColor(android.R.color.holo_green_dark);
+	/**
+	 * @return true if the face is taken from the cache or has no image
+	 */
+	private boolean loadCachedFace(Face face, int bitmapId, Bitmap bitmap, PrepareTrace trace) {
+		CacheKey key = cacheKey(bitmapId, bitmap);
+		if (key == null) {
+			return true;
+		}
+		face.bitmap = Cache.getInstance(context).acquire(key);
+		if (face.bitmap == null) {
+			return false;
+		}
+		trace.onCacheHit();
+		return true;
+	}
+
+	private SquareGrid createGrid(GridLayout layout, Face front, Face back, PrepareTrace trace) {
+		long sliceStart = System.nanoTime();
+		SquareGrid grid = new SquareGrid(layout.getCount(), layout.getSquareSize());
+		if (front.tiles != null) {
+			grid.setFrontTiles(front.tiles);
+		} else if (front.bitmap == null) {
+			grid.setFrontColor(context.getResources().getColor(android.R.color.holo_red_dark));
 		} else {
-			int backKey = (bitmapBack != null) ? bitmapBack.hashCode() : bitmapBackId;
-			Cache.getInstance().put(backKey, backBitmap);
+			grid.setFrontBitmap(front.bitmap);
 		}
+		if (back.tiles != null) {
+			grid.setBackTiles(back.tiles);
+		} else if (back.bitmap == null) {
+			grid.setBackColor(context.getResources().getColor(android.R.color.holo_green_dark));
+		} else {
+			grid.setBackBitmap(back.bitmap);
+		}
+		grid.setLayout(layout);
 
-		for (int i = 0, j = 0, k = 0; i < imax; i++) {
-			int startX = j * squaresAreaDimen + marginBetween;
-			int startY = k * squaresAreaDimen + marginBetween;
+		grid.setStep(flipSpeed);
+		if (maxDelayValue != EMPTY_VALUE) {
+			grid.setMaxDelay(maxDelayValue);
+		}
+		grid.setState(initialState);
+		grid.useAnimation(animateChanges);
+		grid.setRenderMode(renderMode);
+		grid.setInterpolator(interpolator);
+		trace.addSlice(System.nanoTime() - sliceStart);
+		return grid;
+	}
 
-			Square s = new Square(startX, startY, squaresAreaDimen - marginBetween, squaresAreaDimen - marginBetween);
+	/**
+	 * Get tiles of the resource from cache, missing tiles are decoded straight from their regions of the source.
+	 * Caller owns a {@link BitmapPool} reference to every tile and should release them.
+	 *
+	 * @param reveal receives every tile as soon as it is ready, or null
+	 * @return tile of every square or null if there's no resource or the image can't be decoded by regions
+	 */
+	@Nullable
+	private Bitmap[] getTiles(final int bitmapId, GridLayout layout, PrepareTrace trace,
+	                          @Nullable final BitmapDecoder.TileListener reveal) throws IOException {
+		if (bitmapId == EMPTY_VALUE) {
+			return null;
+		}
+		int count = layout.getCount();
+		final int tileSize = layout.getSourceSize();
+		int[] tileLeft = new int[count];
+		int[] tileTop = new int[count];
+		layout.layout(new int[count], new int[count], tileLeft, tileTop);
+
+		final Bitmap[] tiles = acquireTiles(bitmapId, tileLeft, tileTop, tileSize, trace);
+		final DiskCache disk = diskCache ? DiskCache.getInstance(context) : null;
+		int missing = 0;
+		for (int i = 0; i < count; i++) {
+			if (tiles[i] == null && disk != null) {
+				CacheKey key = CacheKey.forTile(bitmapId, width, width, tileLeft[i], tileTop[i], tileSize, BITMAP_CONFIG, scaleMode);
+				tiles[i] = disk.get(key, trace);
+				if (tiles[i] != null) {
+					BitmapPool.getInstance(context).retain(tiles[i]);
+					Cache.getInstance(context).put(key, tiles[i]);
+				}
+			}
+			if (tiles[i] == null) {
+				missing++;
+			} else if (reveal != null) {
+				reveal.onTileDecoded(i, tiles[i]);
+			}
+		}
+		if (missing == 0) {
+			return tiles;
+		}
 
-			s.setBitmapSrc(startX - marginBetween, startY - marginBetween, startX + s.getWidth(), startY + s.getHeight());
-			if (frontBitmap != null) {
-				s.setFrontBitmap(frontBitmap);
-			} else {
-				s.setFrontColor(colorFront);
+		final int[] missingIndex = new int[missing];
+		final int[] missingLeft = new int[missing];
+		final int[] missingTop = new int[missing];
+		for (int i = 0, k = 0; i < count; i++) {
+			if (tiles[i] == null) {
+				missingIndex[k] = i;
+				missingLeft[k] = tileLeft[i];
+				missingTop[k] = tileTop[i];
+				k++;
+			}
+		}
+		//Set under the lock of tiles once decoding failed or was cancelled, chunks still running may deliver tiles after that
+		final boolean[] closed = new boolean[1];
+		boolean decoded = false;
+		try {
+			decoded = BitmapDecoder.decodeTiles(context.getResources(), bitmapId, width, width,
+					missingLeft, missingTop, tileSize, BITMAP_CONFIG, scaleMode, new BitmapDecoder.TileListener() {
+						@Override
+						public void onTileDecoded(int index, Bitmap tile) {
+							CacheKey key = CacheKey.forTile(bitmapId, width, width,
+									missingLeft[index], missingTop[index], tileSize, BITMAP_CONFIG, scaleMode);
+							BitmapPool pool = BitmapPool.getInstance(context);
+							pool.retain(tile);
+							Cache.getInstance(context).put(key, tile);
+							if (disk != null) {
+								disk.put(key, tile);
+							}
+							boolean kept;
+							synchronized (tiles) {
+								kept = !closed[0];
+								if (kept) {
+									tiles[missingIndex[index]] = tile;
+								}
+							}
+							if (!kept) {
+								//Tiles were already released, the late tile stays only in the cache
+								pool.release(tile);
+								return;
+							}
+							if (reveal != null) {
+								reveal.onTileDecoded(missingIndex[index], tile);
+							}
+						}
+					}, trace);
+		} finally {
+			if (!decoded) {
+				synchronized (tiles) {
+					closed[0] = true;
+				}
+				releaseTiles(tiles);
 			}
+		}
+		return decoded ? tiles : null;
+	}
 
-			if (backBitmap != null) {
-				s.setBackBitmap(backBitmap);
+	private Bitmap[] acquireTiles(int bitmapId, int[] tileLeft, int[] tileTop, int tileSize, PrepareTrace trace) {
+		Cache cache = Cache.getInstance(context);
+		Bitmap[] tiles = new Bitmap[tileLeft.length];
+		for (int i = 0; i < tiles.length; i++) {
+			tiles[i] = cache.acquire(CacheKey.forTile(bitmapId, width, width, tileLeft[i], tileTop[i], tileSize, BITMAP_CONFIG, scaleMode));
+			if (tiles[i] != null) {
+				trace.onCacheHit();
 			} else {
-				s.setBackColor(colorBack);
+				trace.onCacheMiss();
 			}
+		}
+		return tiles;
+	}
 
-			s.setStep(flipSpeed);
-			if (maxDelayValue != EMPTY_VALUE) {
-				s.setMaxDelay(maxDelayValue);
-			}
-			s.setState(initialState);
-			s.useAnimation(animateChanges);
-			squareList.add(s);
-			j++;
-			if (j == squaresHorizontal) {
-				j = 0;
-				k++;
-			}
+	private void releaseTiles(@Nullable Bitmap[] tiles) {
+		if (tiles == null) {
+			return;
+		}
+		BitmapPool pool = BitmapPool.getInstance(context);
+		for (Bitmap tile : tiles) {
+			pool.release(tile);
 		}
+	}
 
-		return squareList;
+	/**
+	 * Stop preparing if the task was cancelled by a newer request
+	 */
+	static void checkCancelled() {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("Prepare superseded by a newer request");
+		}
 	}
 
 	private void checkWidth() {
@@ -264,60 +702,163 @@ class PrepareUtils {
 		}
 	}
 
+	/**
+	 * Get scaled bitmap from cache or create it. Bitmap of the same source cached in a larger size
+	 * is scaled down instead of decoding the source again.
+	 * Caller owns a {@link BitmapPool} reference to the result and should release it.
+	 */
 	@Nullable
-	private Bitmap getBitmap(int bitmapId, Bitmap bitmap) {
-		Bitmap result = getFromCache(bitmapId, bitmap);
+	private Bitmap getBitmap(int bitmapId, Bitmap bitmap, PrepareTrace trace) {
+		CacheKey key = cacheKey(bitmapId, bitmap);
+		if (key == null) {
+			return null;
+		}
 
+		Cache cache = Cache.getInstance(context);
+		BitmapPool pool = BitmapPool.getInstance(context);
+		Bitmap result = cache.acquire(key);
 		if (result != null) {
+			trace.onCacheHit();
 			return result;
 		}
-
-		if (bitmapId != EMPTY_VALUE) {
-			return bitmapFromResources(bitmapId);
+		trace.onCacheMiss();
+
+		Bitmap larger = cache.acquireClosestLarger(key);
+		DiskCache disk = diskCache ? DiskCache.getInstance(context) : null;
+		DiskCache store = null;
+		if (larger != null) {
+			result = BitmapDecoder.scale(larger, width, width, trace);
+			pool.release(larger);
+		} else if (bitmapId != EMPTY_VALUE) {
+			//Resource may be scaled already by an earlier process
+			result = disk != null ? disk.get(key, trace) : null;
+			if (result == null) {
+				result = bitmapFromResources(bitmapId, trace);
+				store = disk;
+			}
+		} else {
+			result = BitmapDecoder.scale(bitmap, width, width, BITMAP_CONFIG, scaleMode, trace);
 		}
 
-		if (bitmap != null) {
-			return scaleBitmap(bitmap, width);
+		if (result != null) {
+			pool.retain(result);
+			cache.put(key, result);
+			//Written after the bitmap is referenced, the writer releasing its reference must not return it to the pool
+			if (store != null) {
+				store.put(key, result);
+			}
 		}
+		return result;
+	}
 
-		return null;
+	/**
+	 * @param bitmapId image resource id
+	 * @return key of the resource scaled with current settings
+	 */
+	CacheKey resourceKey(int bitmapId) {
+		checkWidth();
+		return CacheKey.forResource(bitmapId, width, width, BITMAP_CONFIG, scaleMode);
+	}
+
+	/**
+	 * @return bytes taken by one bitmap scaled with current settings
+	 */
+	long scaledByteCount() {
+		checkWidth();
+		return (long) width * width * BitmapDecoder.bytesPerPixel(BITMAP_CONFIG);
 	}
 
 	@Nullable
-	private static Bitmap getFromCache(int bitmapId, Bitmap bitmap) {
+	private CacheKey cacheKey(int bitmapId, Bitmap bitmap) {
 		if (bitmapId != EMPTY_VALUE) {
-			return Cache.getInstance().get(bitmapId);
+			return CacheKey.forResource(bitmapId, width, width, BITMAP_CONFIG, scaleMode);
 		}
 		if (bitmap != null) {
-			return Cache.getInstance().get(bitmap.hashCode());
+			return CacheKey.forBitmap(bitmap, width, width, BITMAP_CONFIG, scaleMode);
 		}
 		return null;
 	}
 
 	@Nullable
-	private Bitmap bitmapFromResources(int bitmapId) {
-		Bitmap b = BitmapFactory.decodeResource(context.getResources(), bitmapId);
-		if (b != null) {
-			return scaleBitmap(b, width);
-		}
-		return null;
+	private Bitmap bitmapFromResources(int bitmapId, PrepareTrace trace) {
+		return BitmapDecoder.decodeResource(context.getResources(), bitmapId, width, width, BITMAP_CONFIG, scaleMode, trace);
 	}
 
-	private static Bitmap scaleBitmap(Bitmap bitmap, int width) {
-		return Bitmap.createScaledBitmap(bitmap, width, width, false);
+	/**
+	 * Prepare Squared asynchronously(dividing bitmaps, set initial values) on the shared {@link PrepareScheduler}.
+	 * Task works with a copy of current settings, so they can be changed for the next request right away.
+	 *
+	 * @param visible  true if the view is visible now, its task will run before tasks of invisible views
+	 * @param reveal   true if squares flip to the new image, it is revealed tile by tile if progressive reveal is on
+	 * @param listener receives squares as soon as they are ready
+	 * @return future with grid of Squares to use
+	 */
+	public Future<SquareGrid> prepareAsync(boolean visible, final boolean reveal, final PrepareListener listener) {
+		final PrepareUtils snapshot = new PrepareUtils(this);
+		return PrepareScheduler.getInstance().submit(new Callable<SquareGrid>() {
+			@Override
+			public SquareGrid call() throws Exception {
+				boolean completed = false;
+				try {
+					SquareGrid grid;
+					if (reveal && snapshot.canReveal()) {
+						grid = snapshot.prepareRevealing(listener);
+					} else {
+						grid = snapshot.prepare();
+						listener.onPrepared(grid);
+					}
+					completed = true;
+					return grid;
+				} finally {
+					if (!completed) {
+						listener.onFailed();
+					}
+				}
+			}
+		}, visible);
 	}
 
 	/**
-	 * Prepare Squared asynchronously(dividing bitmaps, set initial values).
+	 * Decode and scale resource with current settings into {@link Cache} on the shared {@link PrepareScheduler},
+	 * without slicing it into squares. Used to have the next images ready before they are shown.
 	 *
-	 * @return future with collection of Squares to use
+	 * @param bitmapId image resource id
+	 * @param listener receives the bitmap, it always gets called once the task has started
+	 * @return future of the task
 	 */
-	public Future<Collection<Square>> prepareAsync() {
-		return Executors.newSingleThreadExecutor().submit(new Callable<Collection<Square>>() {
+	Future<?> loadAsync(final int bitmapId, final LoadListener listener) {
+		final PrepareUtils snapshot = new PrepareUtils(this);
+		return PrepareScheduler.getInstance().submit(new Callable<Void>() {
 			@Override
-			public Collection<Square> call() throws Exception {
-				return prepare();
+			public Void call() throws Exception {
+				snapshot.checkWidth();
+				PrepareTrace trace = new PrepareTrace();
+				Bitmap bitmap = null;
+				try {
+					bitmap = snapshot.getBitmap(bitmapId, null, trace);
+				} finally {
+					PrepareStats.getInstance().record(trace.finish(bitmap != null));
+					listener.onLoaded(bitmap);
+				}
+				return null;
 			}
-		});
+		}, false);
+	}
+
+	/**
+	 * Scaled image of one side of squares: one bitmap sliced by squares, or an own tile for every square
+	 */
+	private static class Face {
+		private Bitmap bitmap;
+		private Bitmap[] tiles;
+
+		private void release(BitmapPool pool) {
+			pool.release(bitmap);
+			if (tiles != null) {
+				for (Bitmap tile : tiles) {
+					pool.release(tile);
+				}
+			}
+		}
 	}
 }
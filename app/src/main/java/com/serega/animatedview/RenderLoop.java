@@ -0,0 +1,16 @@
+package com.serega.animatedview;
+
+/**
+ * Thread rendering frames of a {@link Renderable} on vsync
+ */
+interface RenderLoop {
+	/**
+	 * Render one more frame on the next vsync. Safe to call from any thread.
+	 */
+	void requestFrame();
+
+	/**
+	 * Stop rendering. Returns after the frame in progress is finished, the renderable is not called anymore.
+	 */
+	void quit();
+}
@@ -0,0 +1,82 @@
+package com.serega.animatedview;
+
+import android.view.Choreographer;
+
+/**
+ * Event-driven frame scheduler for the render thread.
+ * The render thread parks in {@link #awaitFrame()} until somebody requests a frame,
+ * requested frames are delivered on the next vsync signal from {@link Choreographer}.
+ */
+class RenderScheduler implements Choreographer.FrameCallback {
+	private final Object lock = new Object();
+	private final Choreographer choreographer;
+
+	/**
+	 * Frame callback was posted and we are waiting for vsync
+	 */
+	private boolean frameCallbackPosted;
+
+	/**
+	 * Vsync arrived, render thread can draw the next frame
+	 */
+	private boolean frameArrived;
+	private boolean released;
+
+	/**
+	 * Should be created on a thread with Looper (main thread), vsync signals will be delivered there
+	 */
+	RenderScheduler() {
+		choreographer = Choreographer.getInstance();
+	}
+
+	/**
+	 * Request one more frame on the next vsync. Safe to call from any thread.
+	 */
+	void requestFrame() {
+		synchronized (lock) {
+			if (!frameCallbackPosted && !released) {
+				frameCallbackPosted = true;
+				choreographer.postFrameCallback(this);
+			}
+		}
+	}
+
+	@Override
+	public void doFrame(long frameTimeNanos) {
+		synchronized (lock) {
+			frameCallbackPosted = false;
+			frameArrived = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Park calling thread until the requested frame arrives
+	 *
+	 * @return true - draw the frame, false - scheduler released, render thread should stop
+	 * @throws InterruptedException if the render thread was interrupted while waiting
+	 */
+	boolean awaitFrame() throws InterruptedException {
+		synchronized (lock) {
+			while (!frameArrived && !released) {
+				lock.wait();
+			}
+			frameArrived = false;
+			return !released;
+		}
+	}
+
+	/**
+	 * Stop scheduling frames and wake up the render thread
+	 */
+	void release() {
+		synchronized (lock) {
+			released = true;
+			if (frameCallbackPosted) {
+				choreographer.removeFrameCallback(this);
+				frameCallbackPosted = false;
+			}
+			lock.notifyAll();
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package com.serega.animatedview;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.support.annotation.Nullable;
+
+/**
+ * Something squares can be drawn to: a window surface, a texture or an offscreen bitmap.
+ * Called only from the thread which renders the scene.
+ */
+interface RenderTarget {
+	int getWidth();
+
+	int getHeight();
+
+	/**
+	 * Start drawing a frame
+	 *
+	 * @param dirty area to repaint, target may extend it if previous content can not be preserved
+	 * @return canvas clipped to dirty or null if the target is not ready
+	 */
+	@Nullable
+	Canvas lockCanvas(Rect dirty);
+
+	/**
+	 * Finish the frame started by {@link #lockCanvas(Rect)} and show it
+	 *
+	 * @param canvas canvas returned by lockCanvas
+	 */
+	void unlockCanvasAndPost(Canvas canvas);
+}
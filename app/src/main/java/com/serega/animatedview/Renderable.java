@@ -0,0 +1,18 @@
+package com.serega.animatedview;
+
+/**
+ * One view's share of the render work, driven by a {@link RenderLoop}
+ */
+interface Renderable {
+	/**
+	 * Step and draw one frame, called on the render thread
+	 *
+	 * @return true if one more frame is needed
+	 */
+	boolean renderFrame();
+
+	/**
+	 * @return false if the view is not visible now, its frames can wait
+	 */
+	boolean isShown();
+}
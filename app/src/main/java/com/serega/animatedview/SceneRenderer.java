@@ -0,0 +1,158 @@
+package com.serega.animatedview;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Trace;
+import android.support.annotation.Nullable;
+
+/**
+ * Steps squares to the frame time and repaints the changed area on a {@link RenderTarget}.
+ * Knows nothing about threads and views, the same scene can be drawn to a surface, a texture or a bitmap.
+ */
+final class SceneRenderer {
+	private final Rect dirty = new Rect();
+	private final int backgroundColor;
+	private volatile SquareGrid grid;
+	private volatile boolean needFullRedraw = true;
+	private volatile FrameMetrics metrics;
+	private boolean wasAnimating;
+
+	SceneRenderer(int backgroundColor) {
+		this.backgroundColor = backgroundColor;
+	}
+
+	/**
+	 * Show squares, bitmaps of the replaced squares are released
+	 *
+	 * @param grid squares or null to show nothing
+	 */
+	void setGrid(@Nullable SquareGrid grid) {
+		SquareGrid old = this.grid;
+		if (old != null && old != grid) {
+			old.releaseBitmaps();
+		}
+		this.grid = grid;
+		needFullRedraw = true;
+	}
+
+	@Nullable
+	SquareGrid getGrid() {
+		return grid;
+	}
+
+	/**
+	 * @param metrics metrics to record frames to or null to not measure frames
+	 */
+	void setMetrics(@Nullable FrameMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Repaint the whole target on the next frame, e.g. after the target was resized
+	 */
+	void invalidate() {
+		needFullRedraw = true;
+	}
+
+	/**
+	 * Step squares to the frame time and draw them
+	 *
+	 * @param target          target to draw to
+	 * @param frameTimeMillis frame time
+	 * @return true if one more frame is needed: squares are still moving or the target was not ready
+	 */
+	boolean renderFrame(RenderTarget target, long frameTimeMillis) {
+		SquareGrid squares = grid;
+		if (squares == null) {
+			//Nothing prepared yet, next frame will be requested when squares are ready
+			return false;
+		}
+
+		//Collect bounds of squares changing in this frame, only that area will be repainted
+		dirty.setEmpty();
+		squares.prepareFrame(frameTimeMillis, dirty);
+		if (needFullRedraw) {
+			needFullRedraw = false;
+			dirty.set(0, 0, target.getWidth(), target.getHeight());
+		}
+
+		FrameMetrics frameMetrics = metrics;
+		if (!dirty.isEmpty()) {
+			if (frameMetrics != null) {
+				if (!drawMeasured(target, squares, frameMetrics)) {
+					return true;
+				}
+			} else {
+				//Target may extend dirty if previous buffer content can not be preserved
+				Canvas canvas = target.lockCanvas(dirty);
+				if (canvas == null) {
+					needFullRedraw = true;
+					return true;
+				}
+				canvas.drawColor(backgroundColor);
+				squares.draw(canvas, dirty);
+				target.unlockCanvasAndPost(canvas);
+			}
+		}
+
+		//Keep frames coming only while something is moving
+		boolean animating = squares.isAnimating();
+		if (wasAnimating && !animating && frameMetrics != null) {
+			frameMetrics.onAnimationCompleted();
+		}
+		wasAnimating = animating;
+		return animating;
+	}
+
+	/**
+	 * Same as drawing in {@link #renderFrame(RenderTarget, long)}, but every phase is timed and traced
+	 *
+	 * @return false if the target was not ready
+	 */
+	private boolean drawMeasured(RenderTarget target, SquareGrid squares, FrameMetrics frameMetrics) {
+		boolean trace = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+		long start = System.nanoTime();
+		if (trace) {
+			Trace.beginSection("AnimatedView lockCanvas");
+		}
+		Canvas canvas = target.lockCanvas(dirty);
+		if (trace) {
+			Trace.endSection();
+		}
+		if (canvas == null) {
+			needFullRedraw = true;
+			return false;
+		}
+		long locked = System.nanoTime();
+
+		if (trace) {
+			Trace.beginSection("AnimatedView draw");
+		}
+		canvas.drawColor(backgroundColor);
+		squares.draw(canvas, dirty);
+		if (trace) {
+			Trace.endSection();
+		}
+		long drawn = System.nanoTime();
+
+		if (trace) {
+			Trace.beginSection("AnimatedView unlockCanvasAndPost");
+		}
+		target.unlockCanvasAndPost(canvas);
+		if (trace) {
+			Trace.endSection();
+		}
+		long posted = System.nanoTime();
+
+		frameMetrics.recordFrame(locked - start, drawn - locked, posted - drawn);
+		return true;
+	}
+
+	/**
+	 * Drop squares and release their bitmaps
+	 */
+	void release() {
+		setGrid(null);
+	}
+}
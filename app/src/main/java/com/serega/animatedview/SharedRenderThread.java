@@ -0,0 +1,133 @@
+package com.serega.animatedview;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * One render thread for many views. On every vsync it renders attached views which requested a frame,
+ * views without pending frames and views which are not shown cost nothing.
+ * Views are served round robin within a frame budget, views left over are served first on the next vsync,
+ * so one heavy view can't starve the others.
+ */
+final class SharedRenderThread extends Thread {
+	/**
+	 * Render time per vsync, the rest of the frame is left for the main thread and composition
+	 */
+	private static final long FRAME_BUDGET_NANOS = 12000000;
+
+	private static SharedRenderThread instance;
+
+	private final RenderScheduler scheduler = new RenderScheduler();
+	private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Index of the client served first on the next vsync
+	 */
+	private int nextClient;
+
+	private SharedRenderThread() {
+		super("AnimatedView shared render");
+	}
+
+	/**
+	 * First call should happen on the main thread, see {@link RenderScheduler}
+	 */
+	static synchronized SharedRenderThread getInstance() {
+		if (instance == null) {
+			instance = new SharedRenderThread();
+			instance.start();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Start rendering the view on this thread
+	 *
+	 * @param renderable view to render
+	 * @return render loop of the view, first frame is already requested
+	 */
+	RenderLoop attach(Renderable renderable) {
+		Client client = new Client(renderable);
+		clients.add(client);
+		client.requestFrame();
+		return client;
+	}
+
+	@Override
+	public void run() {
+		super.run();
+		while (true) {
+			try {
+				if (!scheduler.awaitFrame()) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				break;
+			}
+			renderClients();
+		}
+	}
+
+	private void renderClients() {
+		Object[] snapshot = clients.toArray();
+		int count = snapshot.length;
+		if (count == 0) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		int first = nextClient % count;
+		nextClient = first + 1;
+		boolean needFrame = false;
+		for (int k = 0; k < count; k++) {
+			Client client = (Client) snapshot[(first + k) % count];
+			if (!client.pending || !client.renderable.isShown()) {
+				//Idle, or hidden: hidden view requests a frame when it is shown again
+				continue;
+			}
+			if (System.nanoTime() - start > FRAME_BUDGET_NANOS) {
+				//Out of budget, this view goes first on the next vsync
+				nextClient = (first + k) % count;
+				needFrame = true;
+				break;
+			}
+			client.pending = false;
+			if (client.render()) {
+				client.pending = true;
+			}
+			needFrame |= client.pending;
+		}
+		if (needFrame) {
+			scheduler.requestFrame();
+		}
+	}
+
+	private final class Client implements RenderLoop {
+		private final Renderable renderable;
+		private volatile boolean pending;
+		private boolean quit;
+
+		private Client(Renderable renderable) {
+			this.renderable = renderable;
+		}
+
+		private synchronized boolean render() {
+			return !quit && renderable.renderFrame();
+		}
+
+		@Override
+		public void requestFrame() {
+			pending = true;
+			scheduler.requestFrame();
+		}
+
+		@Override
+		public void quit() {
+			clients.remove(this);
+			//Waits for the frame in progress
+			synchronized (this) {
+				quit = true;
+			}
+		}
+	}
+}
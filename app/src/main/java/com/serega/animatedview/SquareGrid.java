@@ -0,0 +1,631 @@
+package com.serega.animatedview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Shader;
+
+import com.serega.animatedview.core.FlipAnimation;
+import com.serega.animatedview.core.GridLayout;
+import com.serega.animatedview.core.InterpolatorTable;
+
+/**
+ * All squares of AnimatedView. Per square state is kept in primitive arrays indexed by square number
+ * (row by row), one Paint and one Matrix serve the whole grid. Flip state lives in {@link FlipAnimation},
+ * this class maps it to canvas transforms. Grid is stepped and drawn by a single thread.
+ */
+class SquareGrid {
+	public static final float MAX_ANGLE_Y = FlipAnimation.MAX_ANGLE_Y;
+	public static final float MAX_ANGLE_Z = 45;
+	public static final int MAX_STEPS_COUNT = FlipAnimation.MAX_STEPS_COUNT;
+
+	/**
+	 * Every square is drawn with its own drawBitmap call
+	 */
+	public static final int RENDER_MODE_SQUARES = 0;
+
+	/**
+	 * Corners of all squares are projected into one vertex array, each face is drawn with a single drawVertices call
+	 */
+	public static final int RENDER_MODE_MESH = 1;
+
+	/**
+	 * Indices are shorts, so one mesh call can address at most this many squares (4 vertices each)
+	 */
+	private static final int MAX_MESH_SQUARES = Short.MAX_VALUE / 4;
+
+	public enum State {
+		FRONT,
+		BACK
+	}
+
+	private final int count;
+	private final int squareSize;
+
+	/**
+	 * Top left corners of squares on the view
+	 */
+	private final int[] left;
+	private final int[] top;
+
+	/**
+	 * Top left corners of square regions in bitmaps, regions are {@link #srcSize} wide
+	 */
+	private final int[] srcLeft;
+	private final int[] srcTop;
+	private int srcSize;
+
+	private final FlipAnimation flips;
+	private final boolean[] flippingInFrame;
+	private final boolean[] wasFlippingInFrame;
+
+	/**
+	 * Area covered by squares on the surface right now, 4 values (left, top, right, bottom) per square
+	 */
+	private final int[] drawnBounds;
+
+	private final FlipTransforms transforms = FlipTransforms.forStep(FlipAnimation.ANGLE_RESOLUTION);
+	private boolean useAnimation = true;
+
+	/**
+	 * If there's no bitmap, squares will be painted in these colors
+	 */
+	private int colorFront = Color.RED;
+	private int colorBack = Color.GREEN;
+	private Bitmap bitmapFront;
+	private Bitmap bitmapBack;
+
+	/**
+	 * Own bitmap of every square, used instead of the face bitmap if set
+	 */
+	private Bitmap[] tilesFront;
+	private Bitmap[] tilesBack;
+
+	/**
+	 * Face revealed tile by tile. Prepare threads hand tiles over to arrivedTiles,
+	 * the draw thread moves them to the face and flips their squares.
+	 */
+	private final Object revealLock = new Object();
+	private Bitmap[] arrivedTiles;
+	private Bitmap arrivedFace;
+	private boolean released;
+	private boolean revealFailed;
+	private boolean[] waitingTiles;
+	private int waitingCount;
+	private boolean revealBack;
+
+	private final Paint paint = new Paint();
+	private final Matrix matrix = new Matrix();
+	private final Rect src = new Rect();
+	private final Rect dst = new Rect();
+	private final RectF frameBounds = new RectF();
+	private final Rect tmpBounds = new Rect();
+
+	private int renderMode = RENDER_MODE_SQUARES;
+	private float[] meshVertices;
+	private float[] meshTexs;
+	private short[] meshIndices;
+	private final float[] corners = new float[8];
+	private final Paint meshPaint = new Paint();
+	private BitmapShader frontShader;
+	private BitmapShader backShader;
+
+	/**
+	 * @param count      squares count
+	 * @param squareSize side of a square on the view
+	 */
+	SquareGrid(int count, int squareSize) {
+		this.count = count;
+		this.squareSize = squareSize;
+		srcSize = squareSize;
+		left = new int[count];
+		top = new int[count];
+		srcLeft = new int[count];
+		srcTop = new int[count];
+		flips = new FlipAnimation(count);
+		flippingInFrame = new boolean[count];
+		wasFlippingInFrame = new boolean[count];
+		drawnBounds = new int[count * 4];
+	}
+
+	/**
+	 * Set positions of all squares
+	 *
+	 * @param layout layout of the grid, should have the same squares count
+	 */
+	void setLayout(GridLayout layout) {
+		layout.layout(left, top, srcLeft, srcTop);
+		srcSize = layout.getSourceSize();
+		for (int i = 0; i < count; i++) {
+			int b = i << 2;
+			drawnBounds[b] = left[i];
+			drawnBounds[b + 1] = top[i];
+			drawnBounds[b + 2] = left[i] + squareSize;
+			drawnBounds[b + 3] = top[i] + squareSize;
+		}
+	}
+
+	int getCount() {
+		return count;
+	}
+
+	int getSquareSize() {
+		return squareSize;
+	}
+
+	/**
+	 * @param renderMode {@link #RENDER_MODE_SQUARES} or {@link #RENDER_MODE_MESH}
+	 */
+	void setRenderMode(int renderMode) {
+		this.renderMode = renderMode;
+	}
+
+	void useAnimation(boolean useAnimation) {
+		this.useAnimation = useAnimation;
+	}
+
+	void setMaxDelay(long maxDelayInMillis) {
+		flips.setMaxDelay(maxDelayInMillis);
+	}
+
+	/**
+	 * @param step flip speed in degrees per frame at {@link FlipAnimation#REFERENCE_FRAME_RATE}
+	 */
+	void setStep(int step) {
+		flips.setStep(step);
+	}
+
+	/**
+	 * @param interpolator easing of the flip
+	 */
+	void setInterpolator(InterpolatorTable interpolator) {
+		flips.setInterpolator(interpolator);
+	}
+
+	void setFrontColor(int colorFront) {
+		this.colorFront = colorFront;
+	}
+
+	void setBackColor(int colorBack) {
+		this.colorBack = colorBack;
+	}
+
+	/**
+	 * Set front bitmap, replaced bitmap returns to {@link BitmapPool} if nobody else uses it
+	 */
+	void setFrontBitmap(Bitmap bitmap) {
+		if (bitmapFront != bitmap) {
+			BitmapPool pool = BitmapPool.getInstance();
+			pool.retain(bitmap);
+			pool.release(bitmapFront);
+			frontShader = null;
+		}
+		bitmapFront = bitmap;
+	}
+
+	/**
+	 * Set back bitmap, replaced bitmap returns to {@link BitmapPool} if nobody else uses it
+	 */
+	void setBackBitmap(Bitmap bitmap) {
+		if (bitmapBack != bitmap) {
+			BitmapPool pool = BitmapPool.getInstance();
+			pool.retain(bitmap);
+			pool.release(bitmapBack);
+			backShader = null;
+		}
+		bitmapBack = bitmap;
+	}
+
+	/**
+	 * Set front tiles, one bitmap of the source size per square
+	 */
+	void setFrontTiles(Bitmap[] tiles) {
+		retainTiles(tiles);
+		releaseTiles(tilesFront);
+		tilesFront = tiles;
+	}
+
+	/**
+	 * Set back tiles, one bitmap of the source size per square
+	 */
+	void setBackTiles(Bitmap[] tiles) {
+		retainTiles(tiles);
+		releaseTiles(tilesBack);
+		tilesBack = tiles;
+	}
+
+	private static void retainTiles(Bitmap[] tiles) {
+		BitmapPool pool = BitmapPool.getInstance();
+		for (Bitmap tile : tiles) {
+			pool.retain(tile);
+		}
+	}
+
+	private static void releaseTiles(Bitmap[] tiles) {
+		if (tiles == null) {
+			return;
+		}
+		BitmapPool pool = BitmapPool.getInstance();
+		for (Bitmap tile : tiles) {
+			pool.release(tile);
+		}
+	}
+
+	/**
+	 * Reveal the face opposite to the current state tile by tile: every square flips as soon as its tile
+	 * is handed over by {@link #onTileReady(int, Bitmap)}. Should be called before the grid is shown.
+	 */
+	void startReveal() {
+		revealBack = !flips.isBack();
+		if (revealBack) {
+			setBackTiles(new Bitmap[count]);
+		} else {
+			setFrontTiles(new Bitmap[count]);
+		}
+		arrivedTiles = new Bitmap[count];
+		waitingTiles = new boolean[count];
+		for (int i = 0; i < count; i++) {
+			waitingTiles[i] = true;
+		}
+		waitingCount = count;
+	}
+
+	/**
+	 * @return true if the grid reveals a face tile by tile, see {@link #startReveal()}
+	 */
+	boolean isRevealing() {
+		synchronized (revealLock) {
+			return waitingCount > 0;
+		}
+	}
+
+	/**
+	 * Hand over a tile of the revealed face, can be called on any thread. Grid takes its own reference.
+	 *
+	 * @param i    square number
+	 * @param tile tile of the square
+	 */
+	void onTileReady(int i, Bitmap tile) {
+		synchronized (revealLock) {
+			if (released) {
+				return;
+			}
+			BitmapPool pool = BitmapPool.getInstance();
+			pool.retain(tile);
+			pool.release(arrivedTiles[i]);
+			arrivedTiles[i] = tile;
+		}
+	}
+
+	/**
+	 * Hand over the whole revealed face at once, e.g. if it can't be decoded by tiles.
+	 * Can be called on any thread, grid takes its own reference.
+	 *
+	 * @param bitmap face bitmap
+	 */
+	void onFaceReady(Bitmap bitmap) {
+		synchronized (revealLock) {
+			if (released) {
+				return;
+			}
+			BitmapPool pool = BitmapPool.getInstance();
+			pool.retain(bitmap);
+			pool.release(arrivedFace);
+			arrivedFace = bitmap;
+		}
+	}
+
+	/**
+	 * Revealed face can't be loaded anymore. Squares still waiting for their tiles stay on the current face,
+	 * they are taken off the wait on the next frame. Can be called on any thread.
+	 */
+	void onRevealFailed() {
+		synchronized (revealLock) {
+			revealFailed = true;
+		}
+	}
+
+	/**
+	 * Move handed over tiles to the revealed face and start flipping their squares
+	 */
+	private void takeArrived(long now) {
+		Bitmap[] tiles = revealBack ? tilesBack : tilesFront;
+		synchronized (revealLock) {
+			if (arrivedFace != null) {
+				if (revealBack) {
+					setBackBitmap(arrivedFace);
+				} else {
+					setFrontBitmap(arrivedFace);
+				}
+				BitmapPool.getInstance().release(arrivedFace);
+				arrivedFace = null;
+			}
+			for (int i = 0; i < count; i++) {
+				if (!waitingTiles[i]) {
+					continue;
+				}
+				if (arrivedTiles[i] != null) {
+					tiles[i] = arrivedTiles[i];
+					arrivedTiles[i] = null;
+				} else if ((revealBack ? bitmapBack : bitmapFront) == null) {
+					continue;
+				}
+				waitingTiles[i] = false;
+				waitingCount--;
+				flips.flip(i, now);
+			}
+			if (revealFailed) {
+				for (int i = 0; i < count; i++) {
+					waitingTiles[i] = false;
+				}
+				waitingCount = 0;
+			}
+		}
+	}
+
+	/**
+	 * Grid will not be drawn anymore, release its bitmaps
+	 */
+	void releaseBitmaps() {
+		BitmapPool pool = BitmapPool.getInstance();
+		synchronized (revealLock) {
+			released = true;
+			releaseTiles(arrivedTiles);
+			pool.release(arrivedFace);
+			arrivedTiles = null;
+			arrivedFace = null;
+		}
+		pool.release(bitmapFront);
+		pool.release(bitmapBack);
+		releaseTiles(tilesFront);
+		releaseTiles(tilesBack);
+		bitmapFront = null;
+		bitmapBack = null;
+		tilesFront = null;
+		tilesBack = null;
+		frontShader = null;
+		backShader = null;
+	}
+
+	/**
+	 * Set state of all squares
+	 */
+	void setState(State state) {
+		flips.setState(state == State.BACK);
+	}
+
+	State getCurrentState() {
+		return flips.isBack() ? State.BACK : State.FRONT;
+	}
+
+	/**
+	 * Start flipping all squares, each square waits for a random delay before it starts.
+	 * Squares which are already flipping finish their flip.
+	 *
+	 * @param now frame clock time in millis
+	 */
+	void flip(long now) {
+		flips.flip(now);
+	}
+
+	/**
+	 * @return true if at least one square is flipping or waiting for its start delay
+	 */
+	boolean isAnimating() {
+		return flips.isAnimating();
+	}
+
+	/**
+	 * Advance flipping squares to the frame time, should be called before {@link #draw(Canvas, Rect)}.
+	 * For squares changing in this frame, area they covered before and area they will cover are added to dirty.
+	 *
+	 * @param now   frame clock time in millis, the same for all squares of the frame
+	 * @param dirty region to repaint in this frame
+	 * @return true if at least one square changes in this frame
+	 */
+	boolean prepareFrame(long now, Rect dirty) {
+		if (waitingCount > 0) {
+			takeArrived(now);
+		}
+		boolean changed = false;
+		for (int i = 0; i < count; i++) {
+			boolean flipping = flips.isFlipping(i, now);
+			if (flipping) {
+				flips.advance(i, now);
+			}
+			flippingInFrame[i] = flipping;
+			if (!flipping && !wasFlippingInFrame[i]) {
+				continue;
+			}
+			wasFlippingInFrame[i] = flipping;
+			changed = true;
+
+			frameBounds.set(left[i], top[i], left[i] + squareSize, top[i] + squareSize);
+			if (flipping && useAnimation) {
+				computeMatrix(i);
+				matrix.mapRect(frameBounds);
+			}
+			frameBounds.roundOut(tmpBounds);
+			//Filtering may touch one pixel around the transformed bounds
+			tmpBounds.inset(-1, -1);
+
+			int b = i << 2;
+			dirty.union(drawnBounds[b], drawnBounds[b + 1], drawnBounds[b + 2], drawnBounds[b + 3]);
+			dirty.union(tmpBounds);
+			drawnBounds[b] = tmpBounds.left;
+			drawnBounds[b + 1] = tmpBounds.top;
+			drawnBounds[b + 2] = tmpBounds.right;
+			drawnBounds[b + 3] = tmpBounds.bottom;
+		}
+		return changed;
+	}
+
+	/**
+	 * Draw squares intersecting the area as they are in the frame prepared by {@link #prepareFrame(long, Rect)}
+	 *
+	 * @param canvas canvas to draw on
+	 * @param area   area to repaint
+	 */
+	void draw(Canvas canvas, Rect area) {
+		//Tiles can't share one shader, tiled grid is drawn square by square
+		if (renderMode == RENDER_MODE_MESH && tilesFront == null && tilesBack == null) {
+			drawMesh(canvas, area);
+			return;
+		}
+
+		for (int i = 0; i < count; i++) {
+			if (!isDrawnInside(i, area)) {
+				continue;
+			}
+
+			if (!flippingInFrame[i]) {
+				drawSquare(canvas, i);
+				continue;
+			}
+
+			canvas.save();
+			if (useAnimation) {
+				computeMatrix(i);
+				canvas.concat(matrix);
+			}
+			drawSquare(canvas, i);
+			canvas.restore();
+		}
+	}
+
+	private boolean isDrawnInside(int i, Rect area) {
+		int b = i << 2;
+		return drawnBounds[b] < area.right && drawnBounds[b + 2] > area.left
+				&& drawnBounds[b + 1] < area.bottom && drawnBounds[b + 3] > area.top;
+	}
+
+	private void drawMesh(Canvas canvas, Rect area) {
+		if (meshVertices == null) {
+			int squares = Math.min(count, MAX_MESH_SQUARES);
+			meshVertices = new float[squares * 8];
+			meshTexs = new float[squares * 8];
+			meshIndices = new short[squares * 6];
+			for (int k = 0; k < squares; k++) {
+				int v = k << 2;
+				int n = k * 6;
+				meshIndices[n] = (short) v;
+				meshIndices[n + 1] = (short) (v + 1);
+				meshIndices[n + 2] = (short) (v + 2);
+				meshIndices[n + 3] = (short) v;
+				meshIndices[n + 4] = (short) (v + 2);
+				meshIndices[n + 5] = (short) (v + 3);
+			}
+		}
+
+		drawMeshFace(canvas, area, false);
+		drawMeshFace(canvas, area, true);
+	}
+
+	/**
+	 * Draw all squares showing one face with a single call (or one call per MAX_MESH_SQUARES squares)
+	 */
+	private void drawMeshFace(Canvas canvas, Rect area, boolean back) {
+		Bitmap bitmap = back ? bitmapBack : bitmapFront;
+		if (bitmap != null) {
+			BitmapShader shader = back ? backShader : frontShader;
+			if (shader == null) {
+				shader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+				if (back) {
+					backShader = shader;
+				} else {
+					frontShader = shader;
+				}
+			}
+			meshPaint.setShader(shader);
+		} else {
+			meshPaint.setShader(null);
+			meshPaint.setColor(back ? colorBack : colorFront);
+		}
+
+		int squares = 0;
+		for (int i = 0; i < count; i++) {
+			if (flips.showsBack(i) != back || !isDrawnInside(i, area)) {
+				continue;
+			}
+
+			float l = left[i];
+			float t = top[i];
+			float r = l + squareSize;
+			float b = t + squareSize;
+			corners[0] = l;
+			corners[1] = t;
+			corners[2] = r;
+			corners[3] = t;
+			corners[4] = r;
+			corners[5] = b;
+			corners[6] = l;
+			corners[7] = b;
+
+			int v = squares << 3;
+			if (flippingInFrame[i] && useAnimation) {
+				computeMatrix(i);
+				matrix.mapPoints(meshVertices, v, corners, 0, 4);
+			} else {
+				System.arraycopy(corners, 0, meshVertices, v, 8);
+			}
+
+			float sl = srcLeft[i];
+			float st = srcTop[i];
+			float sr = sl + srcSize;
+			float sb = st + srcSize;
+			meshTexs[v] = sl;
+			meshTexs[v + 1] = st;
+			meshTexs[v + 2] = sr;
+			meshTexs[v + 3] = st;
+			meshTexs[v + 4] = sr;
+			meshTexs[v + 5] = sb;
+			meshTexs[v + 6] = sl;
+			meshTexs[v + 7] = sb;
+
+			squares++;
+			if (squares == MAX_MESH_SQUARES) {
+				flushMesh(canvas, squares, bitmap != null);
+				squares = 0;
+			}
+		}
+		if (squares > 0) {
+			flushMesh(canvas, squares, bitmap != null);
+		}
+	}
+
+	private void flushMesh(Canvas canvas, int squares, boolean textured) {
+		canvas.drawVertices(Canvas.VertexMode.TRIANGLES, squares * 8, meshVertices, 0,
+				textured ? meshTexs : null, 0, null, 0, meshIndices, 0, squares * 6, meshPaint);
+	}
+
+	private void drawSquare(Canvas canvas, int i) {
+		dst.set(left[i], top[i], left[i] + squareSize, top[i] + squareSize);
+		Bitmap[] tiles = flips.showsBack(i) ? tilesBack : tilesFront;
+		if (tiles != null && tiles[i] != null) {
+			canvas.drawBitmap(tiles[i], null, dst, paint);
+			return;
+		}
+		Bitmap bitmap = flips.showsBack(i) ? bitmapBack : bitmapFront;
+		if (bitmap != null) {
+			src.set(srcLeft[i], srcTop[i], srcLeft[i] + srcSize, srcTop[i] + srcSize);
+			canvas.drawBitmap(bitmap, src, dst, paint);
+		} else {
+			paint.setColor(flips.showsBack(i) ? colorBack : colorFront);
+			canvas.drawRect(dst, paint);
+		}
+	}
+
+	private void computeMatrix(int i) {
+		transforms.getMatrix(flips.getAngle(i), matrix);
+
+		float centerX = left[i] + (squareSize >> 1);
+		float centerY = top[i] + (squareSize >> 1);
+		matrix.preTranslate(-centerX, -centerY);
+		matrix.postTranslate(centerX, centerY);
+	}
+}
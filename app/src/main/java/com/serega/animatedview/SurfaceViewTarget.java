@@ -0,0 +1,40 @@
+package com.serega.animatedview;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+/**
+ * Draws to the surface of a SurfaceView. Surface is composed by the system, not by the view hierarchy,
+ * so it is the cheapest target for opaque views which are not animated, scrolled or faded.
+ */
+final class SurfaceViewTarget implements RenderTarget {
+	private final SurfaceView view;
+	private final SurfaceHolder holder;
+
+	SurfaceViewTarget(SurfaceView view) {
+		this.view = view;
+		this.holder = view.getHolder();
+	}
+
+	@Override
+	public int getWidth() {
+		return view.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return view.getHeight();
+	}
+
+	@Override
+	public Canvas lockCanvas(Rect dirty) {
+		return holder.lockCanvas(dirty);
+	}
+
+	@Override
+	public void unlockCanvasAndPost(Canvas canvas) {
+		holder.unlockCanvasAndPost(canvas);
+	}
+}
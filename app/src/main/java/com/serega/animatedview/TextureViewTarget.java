@@ -0,0 +1,37 @@
+package com.serega.animatedview;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.view.TextureView;
+
+/**
+ * Draws to the surface texture of a TextureView. Texture is composed with the rest of the view hierarchy,
+ * so the view can be translated, faded or scrolled like any other view. Needs hardware acceleration.
+ */
+final class TextureViewTarget implements RenderTarget {
+	private final TextureView view;
+
+	TextureViewTarget(TextureView view) {
+		this.view = view;
+	}
+
+	@Override
+	public int getWidth() {
+		return view.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return view.getHeight();
+	}
+
+	@Override
+	public Canvas lockCanvas(Rect dirty) {
+		return view.lockCanvas(dirty);
+	}
+
+	@Override
+	public void unlockCanvasAndPost(Canvas canvas) {
+		view.unlockCanvasAndPost(canvas);
+	}
+}
@@ -0,0 +1,71 @@
+package com.serega.animatedview.benchmark;
+
+import com.serega.animatedview.core.FlipAnimation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of stepping all squares to the next frame time, as the render thread does once per frame.
+ * Flips are restarted as soon as they finish, so every measured frame belongs to a flip.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlipStepBenchmark {
+	/**
+	 * Frame interval at 60 fps
+	 */
+	private static final long FRAME_MILLIS = 16;
+
+	@Param({"4", "8", "16", "32", "64"})
+	public int squaresHorizontal;
+
+	/**
+	 * Values of the flipSpeed attribute: slow, normal, fast
+	 */
+	@Param({"2", "6", "18"})
+	public int flipSpeed;
+
+	/**
+	 * 0 - all squares flip together, the worst frame; default delay - squares start at random times
+	 */
+	@Param({"0", "1100"})
+	public long maxDelay;
+
+	private FlipAnimation animation;
+	private long now;
+
+	@Setup
+	public void setUp() {
+		animation = new FlipAnimation(squaresHorizontal * squaresHorizontal, new Random(42));
+		animation.setStep(flipSpeed);
+		animation.setMaxDelay(maxDelay);
+		now = 0;
+		animation.flip(now);
+	}
+
+	@Benchmark
+	public int stepFrame() {
+		now += FRAME_MILLIS;
+		if (!animation.isAnimating()) {
+			animation.flip(now);
+		}
+		return animation.step(now);
+	}
+}
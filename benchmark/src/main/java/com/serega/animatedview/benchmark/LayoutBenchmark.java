@@ -0,0 +1,58 @@
+package com.serega.animatedview.benchmark;
+
+import com.serega.animatedview.core.GridLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of laying out squares of a grid, done by every prepare
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+	/**
+	 * Full width of a 1080p screen
+	 */
+	private static final int WIDTH = 1080;
+	private static final int MARGIN = 4;
+
+	@Param({"4", "8", "16", "32", "64"})
+	public int squaresHorizontal;
+
+	private int[] left;
+	private int[] top;
+	private int[] srcLeft;
+	private int[] srcTop;
+
+	@Setup
+	public void setUp() {
+		int count = squaresHorizontal * squaresHorizontal;
+		left = new int[count];
+		top = new int[count];
+		srcLeft = new int[count];
+		srcTop = new int[count];
+	}
+
+	@Benchmark
+	public int[] layout() {
+		GridLayout layout = new GridLayout(WIDTH, squaresHorizontal, MARGIN);
+		layout.layout(left, top, srcLeft, srcTop);
+		return srcTop;
+	}
+}
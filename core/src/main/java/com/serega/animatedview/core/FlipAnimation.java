@@ -0,0 +1,232 @@
+package com.serega.animatedview.core;
+
+import java.util.Random;
+
+/**
+ * Flip state of all squares of a grid, stepped by elapsed time. Per square state is kept in primitive arrays.
+ * Each square turns by 2 * MAX_ANGLE_Y, its faces swap when it is edge-on.
+ * Not thread safe, stepped by a single thread.
+ */
+public final class FlipAnimation {
+	public static final float MAX_ANGLE_Y = 90;
+	public static final int MAX_STEPS_COUNT = 180;
+	public static final int DEFAULT_STEP = 6;
+	public static final long DEFAULT_MAX_DELAY = 1100;
+
+	/**
+	 * Flip speed is given in degrees per frame at this frame rate, flip takes the same time at any real frame rate
+	 */
+	public static final int REFERENCE_FRAME_RATE = 60;
+
+	/**
+	 * Angles are rounded to whole degrees, so every angle has a precomputed matrix
+	 */
+	public static final int ANGLE_RESOLUTION = 1;
+
+	private final int count;
+
+	/**
+	 * Flip angle, square rotates by this angle around both Y and Z axes
+	 */
+	private final float[] angle;
+
+	/**
+	 * Frame clock time in millis when flipping starts
+	 */
+	private final long[] startTime;
+	private final boolean[] isBack;
+	private final boolean[] showsBack;
+	private final boolean[] inProgress;
+
+	private final Random random;
+	private long flipDuration = flipDuration(DEFAULT_STEP);
+	private long maxDelay = DEFAULT_MAX_DELAY;
+	private InterpolatorTable interpolator = InterpolatorTable.LINEAR;
+
+	/**
+	 * @param count squares count
+	 */
+	public FlipAnimation(int count) {
+		this(count, new Random());
+	}
+
+	/**
+	 * @param count  squares count
+	 * @param random source of start delays, seeded random gives reproducible flips
+	 */
+	public FlipAnimation(int count, Random random) {
+		this.count = count;
+		this.random = random;
+		angle = new float[count];
+		startTime = new long[count];
+		isBack = new boolean[count];
+		showsBack = new boolean[count];
+		inProgress = new boolean[count];
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @param step flip speed in degrees per frame at {@link #REFERENCE_FRAME_RATE}
+	 */
+	public void setStep(int step) {
+		flipDuration = flipDuration(step);
+	}
+
+	private static long flipDuration(int step) {
+		return Math.round(MAX_STEPS_COUNT * 1000f / (step * REFERENCE_FRAME_RATE));
+	}
+
+	/**
+	 * @return time of one square flip in millis
+	 */
+	public long getFlipDuration() {
+		return flipDuration;
+	}
+
+	/**
+	 * @param maxDelayInMillis squares start flipping after a random delay up to this value
+	 */
+	public void setMaxDelay(long maxDelayInMillis) {
+		maxDelay = maxDelayInMillis;
+	}
+
+	/**
+	 * @param interpolator easing of the flip
+	 */
+	public void setInterpolator(InterpolatorTable interpolator) {
+		this.interpolator = interpolator;
+	}
+
+	/**
+	 * Set state of all squares
+	 *
+	 * @param back true - all squares show the back face
+	 */
+	public void setState(boolean back) {
+		for (int i = 0; i < count; i++) {
+			isBack[i] = back;
+			showsBack[i] = back;
+			angle[i] = 0;
+		}
+	}
+
+	/**
+	 * @return true if the first square rests on its back face
+	 */
+	public boolean isBack() {
+		return count > 0 && isBack[0];
+	}
+
+	/**
+	 * Start flipping all squares, each square waits for a random delay before it starts.
+	 * Squares which are already flipping finish their flip.
+	 *
+	 * @param now frame clock time in millis
+	 */
+	public void flip(long now) {
+		for (int i = 0; i < count; i++) {
+			if (inProgress[i] && now >= startTime[i]) {
+				continue;
+			}
+			startTime[i] = now + (long) (random.nextDouble() * maxDelay);
+			inProgress[i] = true;
+		}
+	}
+
+	/**
+	 * Start flipping one square right away, does nothing if the square is already flipping
+	 *
+	 * @param i   square number
+	 * @param now frame clock time in millis
+	 */
+	public void flip(int i, long now) {
+		if (inProgress[i] && now >= startTime[i]) {
+			return;
+		}
+		startTime[i] = now;
+		inProgress[i] = true;
+	}
+
+	/**
+	 * @return true if at least one square is flipping or waiting for its start delay
+	 */
+	public boolean isAnimating() {
+		for (int i = 0; i < count; i++) {
+			if (inProgress[i]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param i   square number
+	 * @param now frame clock time in millis
+	 * @return true if the square is flipping at this time, its start delay is over
+	 */
+	public boolean isFlipping(int i, long now) {
+		return inProgress[i] && now >= startTime[i];
+	}
+
+	/**
+	 * Set angle and shown face of the square from the time elapsed since its flip started.
+	 * Square flips the whole way in {@link #getFlipDuration()} whatever the frame rate is, dropped frames are skipped.
+	 *
+	 * @param i   flipping square number
+	 * @param now frame clock time in millis
+	 */
+	public void advance(int i, long now) {
+		float elapsed = (now - startTime[i]) / (float) flipDuration;
+		if (elapsed >= 1) {
+			isBack[i] = !isBack[i];
+			showsBack[i] = isBack[i];
+			angle[i] = 0;
+			inProgress[i] = false;
+			return;
+		}
+
+		//Square turns by 2 * MAX_ANGLE_Y, faces swap when it is edge-on
+		float turned = interpolator.get(elapsed) * 2 * MAX_ANGLE_Y;
+		float a;
+		if (turned < MAX_ANGLE_Y) {
+			a = turned;
+			showsBack[i] = isBack[i];
+		} else {
+			a = turned - 2 * MAX_ANGLE_Y;
+			showsBack[i] = !isBack[i];
+		}
+		a = Math.round(a / ANGLE_RESOLUTION) * ANGLE_RESOLUTION;
+		angle[i] = isBack[i] ? -a : a;
+	}
+
+	/**
+	 * Advance all squares flipping at this time
+	 *
+	 * @param now frame clock time in millis
+	 * @return count of squares flipping in this frame
+	 */
+	public int step(long now) {
+		int flipping = 0;
+		for (int i = 0; i < count; i++) {
+			if (isFlipping(i, now)) {
+				advance(i, now);
+				flipping++;
+			}
+		}
+		return flipping;
+	}
+
+	public float getAngle(int i) {
+		return angle[i];
+	}
+
+	/**
+	 * @return true if the square shows its back face now
+	 */
+	public boolean showsBack(int i) {
+		return showsBack[i];
+	}
+}
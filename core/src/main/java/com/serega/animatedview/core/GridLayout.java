@@ -0,0 +1,69 @@
+package com.serega.animatedview.core;
+
+/**
+ * Positions of squares in a square grid. Squares are numbered row by row,
+ * every square is surrounded by the margin, neighbours share the margin between them.
+ */
+public final class GridLayout {
+	private final int squaresHorizontal;
+	private final int margin;
+	private final int areaDimen;
+	private final int squareSize;
+
+	/**
+	 * @param width             side of the view
+	 * @param squaresHorizontal squares in a row (and in a column)
+	 * @param margin            gap between squares and around the grid
+	 */
+	public GridLayout(int width, int squaresHorizontal, int margin) {
+		if (squaresHorizontal <= 0) {
+			throw new IllegalArgumentException("Squares count should be positive: " + squaresHorizontal);
+		}
+		this.squaresHorizontal = squaresHorizontal;
+		this.margin = margin;
+		areaDimen = (width - margin) / squaresHorizontal;
+		squareSize = areaDimen - margin;
+	}
+
+	public int getCount() {
+		return squaresHorizontal * squaresHorizontal;
+	}
+
+	/**
+	 * @return side of a square on the view
+	 */
+	public int getSquareSize() {
+		return squareSize;
+	}
+
+	/**
+	 * @return side of a square region in bitmaps, square with its margin
+	 */
+	public int getSourceSize() {
+		return squareSize + margin;
+	}
+
+	/**
+	 * Compute top left corners of all squares
+	 *
+	 * @param left    left of squares on the view
+	 * @param top     top of squares on the view
+	 * @param srcLeft left of square regions in bitmaps
+	 * @param srcTop  top of square regions in bitmaps
+	 */
+	public void layout(int[] left, int[] top, int[] srcLeft, int[] srcTop) {
+		for (int i = 0, j = 0, k = 0; i < getCount(); i++) {
+			int startX = j * areaDimen + margin;
+			int startY = k * areaDimen + margin;
+			left[i] = startX;
+			top[i] = startY;
+			srcLeft[i] = startX - margin;
+			srcTop[i] = startY - margin;
+			j++;
+			if (j == squaresHorizontal) {
+				j = 0;
+				k++;
+			}
+		}
+	}
+}
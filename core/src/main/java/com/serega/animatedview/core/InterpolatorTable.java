@@ -0,0 +1,75 @@
+package com.serega.animatedview.core;
+
+/**
+ * Interpolator sampled into a table once, so easing costs one lookup and one lerp per square per frame
+ */
+public final class InterpolatorTable {
+	private static final int DEFAULT_SIZE = 256;
+
+	public interface Curve {
+		/**
+		 * @param input elapsed fraction in [0, 1]
+		 * @return interpolated fraction
+		 */
+		float get(float input);
+	}
+
+	public static final InterpolatorTable LINEAR = new InterpolatorTable(new Curve() {
+		@Override
+		public float get(float input) {
+			return input;
+		}
+	}, 2);
+
+	/**
+	 * Same curve as AccelerateDecelerateInterpolator
+	 */
+	public static final InterpolatorTable ACCELERATE_DECELERATE = new InterpolatorTable(new Curve() {
+		@Override
+		public float get(float input) {
+			return (float) (Math.cos((input + 1) * Math.PI) / 2.0f) + 0.5f;
+		}
+	}, DEFAULT_SIZE);
+
+	private final float[] values;
+
+	/**
+	 * @param curve curve to sample
+	 * @param size  count of samples, at least 2
+	 */
+	public InterpolatorTable(Curve curve, int size) {
+		if (size < 2) {
+			throw new IllegalArgumentException("At least 2 samples are needed: " + size);
+		}
+		values = new float[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = curve.get(i / (float) (size - 1));
+		}
+	}
+
+	/**
+	 * @param curve curve to sample
+	 * @return table with the default count of samples
+	 */
+	public static InterpolatorTable of(Curve curve) {
+		return new InterpolatorTable(curve, DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param input elapsed fraction of the animation, clamped to [0, 1]
+	 * @return interpolated fraction
+	 */
+	public float get(float input) {
+		if (input <= 0) {
+			return values[0];
+		}
+		int last = values.length - 1;
+		if (input >= 1) {
+			return values[last];
+		}
+		float position = input * last;
+		int index = (int) position;
+		float fraction = position - index;
+		return values[index] + (values[index + 1] - values[index]) * fraction;
+	}
+}
@@ -0,0 +1,122 @@
+package com.serega.animatedview.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlipAnimationTest {
+	private static final int COUNT = 4;
+	private static final float DELTA = 0.001f;
+
+	private FlipAnimation flips;
+
+	@Before
+	public void setUp() {
+		flips = new FlipAnimation(COUNT, new Random(1));
+		flips.setMaxDelay(0);
+	}
+
+	@Test
+	public void flipDurationDoesNotDependOnFrameRate() {
+		flips.setStep(FlipAnimation.DEFAULT_STEP);
+		assertEquals(500, flips.getFlipDuration());
+		flips.setStep(2 * FlipAnimation.DEFAULT_STEP);
+		assertEquals(250, flips.getFlipDuration());
+	}
+
+	@Test
+	public void idleSquaresAreNotStepped() {
+		assertFalse(flips.isAnimating());
+		assertEquals(0, flips.step(1000));
+	}
+
+	@Test
+	public void flipEndsOnTheOtherFace() {
+		long duration = flips.getFlipDuration();
+		flips.flip(0);
+		assertEquals(COUNT, flips.step(0));
+		assertEquals(COUNT, flips.step(duration - 1));
+		assertTrue(flips.isAnimating());
+		assertFalse(flips.isBack());
+
+		assertEquals(COUNT, flips.step(duration));
+		assertFalse(flips.isAnimating());
+		assertTrue(flips.isBack());
+		for (int i = 0; i < COUNT; i++) {
+			assertTrue(flips.showsBack(i));
+			assertEquals(0, flips.getAngle(i), DELTA);
+		}
+	}
+
+	@Test
+	public void facesSwapWhenSquareIsEdgeOn() {
+		long duration = flips.getFlipDuration();
+		flips.flip(0);
+
+		flips.step(duration / 4);
+		assertEquals(FlipAnimation.MAX_ANGLE_Y / 2, flips.getAngle(0), DELTA);
+		assertFalse(flips.showsBack(0));
+
+		flips.step(duration * 3 / 4);
+		assertEquals(-FlipAnimation.MAX_ANGLE_Y / 2, flips.getAngle(0), DELTA);
+		assertTrue(flips.showsBack(0));
+	}
+
+	@Test
+	public void droppedFramesAreSkipped() {
+		flips.flip(0);
+		flips.step(flips.getFlipDuration() * 10);
+		assertFalse(flips.isAnimating());
+		assertTrue(flips.isBack());
+	}
+
+	@Test
+	public void squaresWaitForTheirDelay() {
+		long maxDelay = 1000;
+		flips.setMaxDelay(maxDelay);
+		flips.flip(0);
+		assertTrue(flips.isAnimating());
+
+		long end = maxDelay + flips.getFlipDuration();
+		for (long now = 0; now <= end; now += 16) {
+			flips.step(now);
+		}
+		flips.step(end);
+		assertFalse(flips.isAnimating());
+		assertTrue(flips.isBack());
+	}
+
+	@Test
+	public void flipDoesNotRestartFlippingSquares() {
+		long duration = flips.getFlipDuration();
+		flips.flip(0);
+		flips.step(duration / 2);
+		flips.flip(duration / 2);
+		flips.step(duration);
+		assertFalse(flips.isAnimating());
+	}
+
+	@Test
+	public void singleSquareFlipsRightAway() {
+		flips.setMaxDelay(1000);
+		flips.flip(1, 100);
+		assertFalse(flips.isFlipping(0, 100));
+		assertTrue(flips.isFlipping(1, 100));
+		assertEquals(1, flips.step(100));
+	}
+
+	@Test
+	public void setStateStopsAtTheFace() {
+		flips.setState(true);
+		assertTrue(flips.isBack());
+		for (int i = 0; i < COUNT; i++) {
+			assertTrue(flips.showsBack(i));
+			assertEquals(0, flips.getAngle(i), DELTA);
+		}
+	}
+}
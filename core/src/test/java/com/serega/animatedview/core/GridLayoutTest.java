@@ -0,0 +1,58 @@
+package com.serega.animatedview.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class GridLayoutTest {
+	@Test
+	public void squaresFillTheViewWithoutMargin() {
+		GridLayout layout = new GridLayout(100, 2, 0);
+		assertEquals(4, layout.getCount());
+		assertEquals(50, layout.getSquareSize());
+		assertEquals(50, layout.getSourceSize());
+
+		int[] left = new int[4];
+		int[] top = new int[4];
+		int[] srcLeft = new int[4];
+		int[] srcTop = new int[4];
+		layout.layout(left, top, srcLeft, srcTop);
+		assertArrayEquals(new int[]{0, 50, 0, 50}, left);
+		assertArrayEquals(new int[]{0, 0, 50, 50}, top);
+		assertArrayEquals(left, srcLeft);
+		assertArrayEquals(top, srcTop);
+	}
+
+	@Test
+	public void neighboursShareTheMargin() {
+		GridLayout layout = new GridLayout(100, 2, 4);
+		assertEquals(44, layout.getSquareSize());
+		assertEquals(48, layout.getSourceSize());
+
+		int[] left = new int[4];
+		int[] top = new int[4];
+		int[] srcLeft = new int[4];
+		int[] srcTop = new int[4];
+		layout.layout(left, top, srcLeft, srcTop);
+		assertArrayEquals(new int[]{4, 52, 4, 52}, left);
+		assertArrayEquals(new int[]{4, 4, 52, 52}, top);
+		assertArrayEquals(new int[]{0, 48, 0, 48}, srcLeft);
+		assertArrayEquals(new int[]{0, 0, 48, 48}, srcTop);
+	}
+
+	@Test
+	public void squaresAreNumberedRowByRow() {
+		GridLayout layout = new GridLayout(90, 3, 0);
+		int[] left = new int[9];
+		int[] top = new int[9];
+		layout.layout(left, top, new int[9], new int[9]);
+		assertArrayEquals(new int[]{0, 30, 60, 0, 30, 60, 0, 30, 60}, left);
+		assertArrayEquals(new int[]{0, 0, 0, 30, 30, 30, 60, 60, 60}, top);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void zeroSquaresAreRejected() {
+		new GridLayout(100, 0, 0);
+	}
+}
@@ -0,0 +1,32 @@
+package com.serega.animatedview.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class InterpolatorTableTest {
+	private static final float DELTA = 0.001f;
+
+	@Test
+	public void linearTableIsExact() {
+		assertEquals(0, InterpolatorTable.LINEAR.get(0), DELTA);
+		assertEquals(0.25f, InterpolatorTable.LINEAR.get(0.25f), DELTA);
+		assertEquals(1, InterpolatorTable.LINEAR.get(1), DELTA);
+	}
+
+	@Test
+	public void inputIsClamped() {
+		assertEquals(0, InterpolatorTable.ACCELERATE_DECELERATE.get(-1), DELTA);
+		assertEquals(1, InterpolatorTable.ACCELERATE_DECELERATE.get(2), DELTA);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void singleSampleIsRejected() {
+		new InterpolatorTable(new InterpolatorTable.Curve() {
+			@Override
+			public float get(float input) {
+				return input;
+			}
+		}, 1);
+	}
+}